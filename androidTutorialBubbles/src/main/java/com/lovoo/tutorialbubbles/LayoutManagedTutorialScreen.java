@@ -21,8 +21,6 @@ class LayoutManagedTutorialScreen extends TutorialScreen {
 
     @Nullable
     private final View mParent;
-    @Nonnull
-    private View mContainerLayout;
     private boolean mIsShowing;
 
     public LayoutManagedTutorialScreen ( @Nonnull TutorialBuilder builder ) {
@@ -34,10 +32,25 @@ class LayoutManagedTutorialScreen extends TutorialScreen {
     @Override
     protected void init ( TutorialBuilder builder ) {
         mContainerLayout = createContainerLayoutWithTutorial(builder);
-        mContainerLayout.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        updateLayerType();
         mContainerLayout.setClickable(true);
     }
 
+    @Override
+    void swapTutorial ( @Nonnull TutorialBuilder builder ) {
+        super.swapTutorial(builder);
+        updateLayerType();
+    }
+
+    private void updateLayerType () {
+        if (mContainerLayout.requiresDimLayer()) {
+            // bitmap masks are cut out of the dim layer with a CLEAR xfermode, which needs an offscreen layer
+            mContainerLayout.updateLayerType(View.LAYER_TYPE_HARDWARE);
+        } else {
+            mContainerLayout.updateLayerType(View.LAYER_TYPE_NONE);
+        }
+    }
+
     @Override
     protected TutorialScreenContainerLayout.TutorialScreenDimension getTutorialDimensions () {
         if(mParent != null) {
@@ -56,7 +69,17 @@ class LayoutManagedTutorialScreen extends TutorialScreen {
     @Override
     public void dismissTutorial () {
         super.dismissTutorial();
-        removeLayout();
+        mContainerLayout.animateExit(new Runnable() {
+            @Override
+            public void run () {
+                // shown again while fading out
+                if (mShouldShow) {
+                    return;
+                }
+                removeLayout();
+                mContainerLayout.releaseHighlightMasks();
+            }
+        });
     }
 
     @Override
@@ -81,12 +104,31 @@ class LayoutManagedTutorialScreen extends TutorialScreen {
 
     @Override
     public void onPause () {
-        removeLayout();
+        // a dismissed tutorial that is still fading out is removed, its exit end action runs right away
+        if (mKeepAttachedOnPause && mIsShowing && mShouldShow) {
+            // stays attached with its measurements and layer, resume only flips the visibility
+            mContainerLayout.setVisibility(View.INVISIBLE);
+            mIsShowing = false;
+            mIsWarmPaused = true;
+        } else {
+            removeLayout();
+        }
     }
 
     @Override
     public void onResume () {
-        addLayout();
+        if (mIsWarmPaused) {
+            mIsWarmPaused = false;
+            mIsShowing = true;
+            mContainerLayout.setVisibility(View.VISIBLE);
+        } else {
+            addLayout();
+        }
+    }
+
+    @Override
+    protected void detachTutorial () {
+        removeLayout();
     }
 
     private void addLayout () {
@@ -103,6 +145,10 @@ class LayoutManagedTutorialScreen extends TutorialScreen {
     }
 
     private void removeLayout () {
+        // a running exit animation ends here, its end action runs before the container is removed
+        mContainerLayout.cancelAnimations();
+        mIsWarmPaused = false;
+        mContainerLayout.setVisibility(View.VISIBLE);
         if (mParent instanceof ViewGroup) {
             mIsShowing = false;
             ViewGroup viewGroup = (ViewGroup) mParent;
@@ -0,0 +1,198 @@
+package com.lovoo.tutorialbubbles;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Bundle;
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Pool of detached tutorial layouts, keyed by their layout resource.
+ * <p>
+ * Layouts are returned to the pool when a {@link TutorialSequence} moves to the next step or when
+ * {@link TutorialScreen#recycle()} is called. A {@link TutorialScreen.TutorialBuilder} with the same layout resource
+ * and context takes the pooled layout instead of inflating a new one and rebinds it through its
+ * {@link TutorialScreen.OnTutorialLayoutInflatedListener}.
+ * <p>
+ * Pooled layouts keep a reference to their context. They are dropped as soon as their activity is destroyed,
+ * the pool registers itself for the activity lifecycle of the application on the first release.
+ */
+public final class TutorialLayoutPool {
+
+    public static final int DEFAULT_MAX_LAYOUTS_PER_RESOURCE = 2;
+
+    private static final SparseArray<ArrayList<View>> sLayouts = new SparseArray<>();
+    private static int sMaxLayoutsPerResource = DEFAULT_MAX_LAYOUTS_PER_RESOURCE;
+
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private static boolean sLifecycleRegistered;
+    private static final Application.ActivityLifecycleCallbacks sLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated ( Activity activity, Bundle savedInstanceState ) {
+        }
+
+        @Override
+        public void onActivityStarted ( Activity activity ) {
+        }
+
+        @Override
+        public void onActivityResumed ( Activity activity ) {
+        }
+
+        @Override
+        public void onActivityPaused ( Activity activity ) {
+        }
+
+        @Override
+        public void onActivityStopped ( Activity activity ) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState ( Activity activity, Bundle outState ) {
+        }
+
+        @Override
+        public void onActivityDestroyed ( Activity activity ) {
+            clear(activity);
+        }
+    };
+
+    private TutorialLayoutPool () {
+    }
+
+    /**
+     * takes a pooled layout for the given resource and context.
+     *
+     * @param layoutRes layout resource
+     * @param context   context the layout has to belong to
+     * @return a detached layout or null if none is pooled
+     */
+    @CheckForNull
+    static synchronized View obtain ( int layoutRes, @Nonnull Context context ) {
+        ArrayList<View> layouts = sLayouts.get(layoutRes);
+        if (layouts != null) {
+            for (int i = layouts.size() - 1; i >= 0; i--) {
+                View layout = layouts.get(i);
+                if (layout.getContext() != context) {
+                    // belongs to another activity, don't keep it alive
+                    layouts.remove(i);
+                } else if (layout.getParent() == null) {
+                    layouts.remove(i);
+                    sHitCount++;
+                    return layout;
+                }
+            }
+        }
+        sMissCount++;
+        return null;
+    }
+
+    /**
+     * hands a detached layout to the pool. the caller must not use the layout afterwards.
+     *
+     * @param layoutRes layout resource the layout was inflated from
+     * @param layout    the detached layout
+     */
+    static synchronized void release ( int layoutRes, @Nonnull View layout ) {
+        if (sMaxLayoutsPerResource <= 0) {
+            return;
+        }
+        registerLifecycleCallbacks(layout.getContext());
+
+        ArrayList<View> layouts = sLayouts.get(layoutRes);
+        if (layouts == null) {
+            layouts = new ArrayList<>(sMaxLayoutsPerResource);
+            sLayouts.put(layoutRes, layouts);
+        }
+        if (layouts.size() < sMaxLayoutsPerResource && !layouts.contains(layout)) {
+            layouts.add(layout);
+        }
+    }
+
+    private static void registerLifecycleCallbacks ( @Nonnull Context context ) {
+        if (sLifecycleRegistered) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext();
+        if (applicationContext instanceof Application) {
+            ((Application) applicationContext).registerActivityLifecycleCallbacks(sLifecycleCallbacks);
+            sLifecycleRegistered = true;
+        }
+    }
+
+    /**
+     * removes all pooled layouts that belong to the given activity.
+     *
+     * @param activity a destroyed activity
+     */
+    static synchronized void clear ( @Nonnull Activity activity ) {
+        for (int i = 0; i < sLayouts.size(); i++) {
+            ArrayList<View> layouts = sLayouts.valueAt(i);
+            for (int j = layouts.size() - 1; j >= 0; j--) {
+                if (belongsTo(layouts.get(j).getContext(), activity)) {
+                    layouts.remove(j);
+                }
+            }
+        }
+    }
+
+    private static boolean belongsTo ( @CheckForNull Context context, @Nonnull Activity activity ) {
+        // layouts may be inflated with a themed wrapper of the activity
+        while (context != null) {
+            if (context == activity) {
+                return true;
+            }
+            if (!(context instanceof ContextWrapper)) {
+                return false;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return false;
+    }
+
+    //region public methods
+
+    /**
+     * sets how many layouts per layout resource are pooled at most.
+     *
+     * @param maxLayouts maximum number of layouts, {@code 0} disables pooling
+     */
+    public static synchronized void setMaxLayoutsPerResource ( int maxLayouts ) {
+        sMaxLayoutsPerResource = Math.max(0, maxLayouts);
+        for (int i = 0; i < sLayouts.size(); i++) {
+            ArrayList<View> layouts = sLayouts.valueAt(i);
+            while (layouts.size() > sMaxLayoutsPerResource) {
+                layouts.remove(0);
+            }
+        }
+    }
+
+    public static synchronized int getMaxLayoutsPerResource () {
+        return sMaxLayoutsPerResource;
+    }
+
+    public static synchronized int getHitCount () {
+        return sHitCount;
+    }
+
+    public static synchronized int getMissCount () {
+        return sMissCount;
+    }
+
+    /**
+     * removes all pooled layouts.
+     */
+    public static synchronized void clear () {
+        sLayouts.clear();
+    }
+    //endregion
+}
@@ -0,0 +1,103 @@
+package com.lovoo.tutorialbubbles;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Forwards the cost counters of a tutorial to the global {@link TutorialMetricsListener} and to the listener
+ * of its {@link TutorialScreen.TutorialBuilder}.
+ */
+public final class TutorialMetrics implements TutorialMetricsListener {
+
+    @CheckForNull
+    private static volatile TutorialMetricsListener sGlobalListener;
+
+    private static final TutorialMetrics GLOBAL_ONLY = new TutorialMetrics(null);
+
+    @CheckForNull
+    private final TutorialMetricsListener mListener;
+
+    private TutorialMetrics ( @CheckForNull TutorialMetricsListener listener ) {
+        mListener = listener;
+    }
+
+    /**
+     * sets a listener that receives the counters of all tutorials.
+     *
+     * @param listener the listener, null to remove it
+     */
+    public static void setGlobalListener ( @CheckForNull TutorialMetricsListener listener ) {
+        sGlobalListener = listener;
+    }
+
+    @CheckForNull
+    public static TutorialMetricsListener getGlobalListener () {
+        return sGlobalListener;
+    }
+
+    /**
+     * returns metrics that report to the global listener and the given listener.
+     *
+     * @param listener listener of a single tutorial or null
+     * @return the metrics to report to
+     */
+    @Nonnull
+    public static TutorialMetrics forListener ( @CheckForNull TutorialMetricsListener listener ) {
+        return listener != null ? new TutorialMetrics(listener) : GLOBAL_ONLY;
+    }
+
+    @Override
+    public void onMeasurePass ( boolean skipped ) {
+        TutorialMetricsListener global = sGlobalListener;
+        if (global != null) {
+            global.onMeasurePass(skipped);
+        }
+        if (mListener != null) {
+            mListener.onMeasurePass(skipped);
+        }
+    }
+
+    @Override
+    public void onBubblePathRebuilt ( boolean fromCache ) {
+        TutorialMetricsListener global = sGlobalListener;
+        if (global != null) {
+            global.onBubblePathRebuilt(fromCache);
+        }
+        if (mListener != null) {
+            mListener.onBubblePathRebuilt(fromCache);
+        }
+    }
+
+    @Override
+    public void onHighlightMaskAllocated ( int bytes ) {
+        TutorialMetricsListener global = sGlobalListener;
+        if (global != null) {
+            global.onHighlightMaskAllocated(bytes);
+        }
+        if (mListener != null) {
+            mListener.onHighlightMaskAllocated(bytes);
+        }
+    }
+
+    @Override
+    public void onWindowManagerCall ( boolean added ) {
+        TutorialMetricsListener global = sGlobalListener;
+        if (global != null) {
+            global.onWindowManagerCall(added);
+        }
+        if (mListener != null) {
+            mListener.onWindowManagerCall(added);
+        }
+    }
+
+    @Override
+    public void onGravityChanged ( int oldGravity, int newGravity ) {
+        TutorialMetricsListener global = sGlobalListener;
+        if (global != null) {
+            global.onGravityChanged(oldGravity, newGravity);
+        }
+        if (mListener != null) {
+            mListener.onGravityChanged(oldGravity, newGravity);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.lovoo.tutorialbubbles;
+
+/**
+ * Receives the cost counters of tutorials, register it globally with
+ * {@link TutorialMetrics#setGlobalListener(TutorialMetricsListener)} or for one tutorial with
+ * {@link TutorialScreen.TutorialBuilder#setMetricsListener(TutorialMetricsListener)}.
+ * <p>
+ * All callbacks are invoked on the main thread while the tutorial is measured, drawn or shown,
+ * so implementations should only count and must not block.
+ */
+public interface TutorialMetricsListener {
+
+    /**
+     * is invoked for every measure pass of a tutorial container.
+     *
+     * @param skipped true if the previous placement was reused without measuring the tutorial again
+     */
+    void onMeasurePass ( boolean skipped );
+
+    /**
+     * is invoked each time the path of a bubble is rebuilt because its geometry changed.
+     *
+     * @param fromCache true if an equal path was taken from the shape cache instead of being built
+     */
+    void onBubblePathRebuilt ( boolean fromCache );
+
+    /**
+     * is invoked when a new highlight mask bitmap is allocated, masks reused from the pool are not reported.
+     *
+     * @param bytes size of the allocated bitmap in bytes
+     */
+    void onHighlightMaskAllocated ( int bytes );
+
+    /**
+     * is invoked for every call to {@code WindowManager#addView} or {@code WindowManager#removeView}.
+     *
+     * @param added true for addView, false for removeView
+     */
+    void onWindowManagerCall ( boolean added );
+
+    /**
+     * is invoked when the bubble moves to another side of its anchor.
+     *
+     * @param oldGravity the previous side, one of the {@link android.view.Gravity} constants
+     * @param newGravity the new side
+     */
+    void onGravityChanged ( int oldGravity, int newGravity );
+}
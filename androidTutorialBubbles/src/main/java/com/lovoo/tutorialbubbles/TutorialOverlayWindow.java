@@ -0,0 +1,196 @@
+package com.lovoo.tutorialbubbles;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import com.lovoo.tutorialbubbles.utils.TutorialEnvironment;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * One full screen overlay window shared by all {@link WindowManagedTutorialScreen}s.
+ * <p>
+ * Tutorials are added to and removed from a host layout inside the window, so only the first tutorial that is
+ * shown adds the window and only the last one that is removed removes it again. Hidden tutorials stay in the
+ * host layout with their measurements, while only hidden tutorials are left the window lets all touches through
+ * until {@link #releaseHiddenWindow(TutorialMetricsListener)} removes it. Stacked tutorials are drawn in
+ * the order they were shown, the topmost one receives touches first.
+ * <p>
+ * Must only be used from the main thread.
+ */
+final class TutorialOverlayWindow {
+
+    @CheckForNull
+    private static TutorialOverlayWindow sInstance;
+
+    @Nonnull
+    private final WindowManager mWindowManager;
+    @Nonnull
+    private final FrameLayout mHostLayout;
+    @Nonnull
+    private final WindowManager.LayoutParams mLayoutParams;
+    private boolean mIsAdded;
+
+    private TutorialOverlayWindow ( @Nonnull Context context ) {
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        mWindowManager = (WindowManager) appContext.getSystemService(Context.WINDOW_SERVICE);
+        mHostLayout = new FrameLayout(appContext);
+
+        mLayoutParams = new WindowManager.LayoutParams(WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_PHONE,
+                calcWindowFlags(context),
+                PixelFormat.TRANSLUCENT);
+    }
+
+    private static int calcWindowFlags ( @Nonnull Context context ) {
+        if (TutorialEnvironment.get(context).isWindowTranslucent) {
+            return WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                    | WindowManager.LayoutParams.FLAG_FULLSCREEN
+                    | WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS;
+        }
+        return WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                | WindowManager.LayoutParams.FLAG_FULLSCREEN;
+    }
+
+    /**
+     * returns the shared overlay window. the window flags follow the context of the tutorial that causes the
+     * window to be added.
+     *
+     * @param context any context of the app
+     * @return the overlay window
+     */
+    @Nonnull
+    static TutorialOverlayWindow get ( @Nonnull Context context ) {
+        if (sInstance == null) {
+            sInstance = new TutorialOverlayWindow(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * adds a tutorial on top of all other tutorials and adds the window if it is not shown yet.
+     *
+     * @param tutorial the tutorial container
+     * @param metrics  receives the window manager calls
+     */
+    void addTutorial ( @Nonnull View tutorial, @Nonnull TutorialMetricsListener metrics ) {
+        if (isAdded(tutorial)) {
+            return;
+        }
+
+        mHostLayout.addView(tutorial, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT,
+                FrameLayout.LayoutParams.MATCH_PARENT));
+        updateWindow(tutorial.getContext(), metrics);
+    }
+
+    /**
+     * removes a tutorial and removes the window once no tutorial is left.
+     *
+     * @param tutorial the tutorial container
+     * @param metrics  receives the window manager calls
+     */
+    void removeTutorial ( @Nonnull View tutorial, @Nonnull TutorialMetricsListener metrics ) {
+        if (!isAdded(tutorial)) {
+            return;
+        }
+
+        mHostLayout.removeView(tutorial);
+        tutorial.setVisibility(View.VISIBLE);
+        updateWindow(tutorial.getContext(), metrics);
+    }
+
+    /**
+     * hides or shows an added tutorial without removing it from the host layout, so it keeps its measurements.
+     * while no tutorial is visible the window stays added but does not take touches, so showing a tutorial
+     * again needs no window manager call.
+     *
+     * @param tutorial the tutorial container
+     * @param visible  true to show the tutorial, false to hide it
+     * @param metrics  receives the window manager calls
+     */
+    void setTutorialVisible ( @Nonnull View tutorial, boolean visible, @Nonnull TutorialMetricsListener metrics ) {
+        if (!isAdded(tutorial)) {
+            return;
+        }
+        tutorial.setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
+        updateWindow(tutorial.getContext(), metrics);
+    }
+
+    /**
+     * removes the window while no tutorial is visible, so no overlay stays above other apps once the app is in
+     * the background. the hidden tutorials keep their measurements, the window is added again when one of them
+     * is shown.
+     *
+     * @param metrics receives the window manager calls
+     */
+    void releaseHiddenWindow ( @Nonnull TutorialMetricsListener metrics ) {
+        if (!hasVisibleTutorial()) {
+            removeWindow(metrics);
+        }
+    }
+
+    /**
+     * adds the window while any tutorial is visible, lets touches through while only hidden tutorials are left
+     * and removes it once the host layout is empty.
+     */
+    private void updateWindow ( @Nonnull Context context, @Nonnull TutorialMetricsListener metrics ) {
+        if (hasVisibleTutorial()) {
+            if (!mIsAdded) {
+                // the activity below may have another status bar translucency than the one that added it last time
+                mLayoutParams.flags = calcWindowFlags(context);
+                mWindowManager.addView(mHostLayout, mLayoutParams);
+                mIsAdded = true;
+                metrics.onWindowManagerCall(true);
+            } else {
+                setWindowTouchable(true);
+            }
+        } else if (mHostLayout.getChildCount() == 0) {
+            removeWindow(metrics);
+        } else {
+            // e.g. a short pause, resume only flips the touchable flag back
+            setWindowTouchable(false);
+        }
+    }
+
+    private boolean hasVisibleTutorial () {
+        for (int i = 0; i < mHostLayout.getChildCount(); i++) {
+            if (mHostLayout.getChildAt(i).getVisibility() == View.VISIBLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setWindowTouchable ( boolean touchable ) {
+        int flags = touchable
+                ? mLayoutParams.flags & ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE
+                : mLayoutParams.flags | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        if (!mIsAdded || flags == mLayoutParams.flags) {
+            return;
+        }
+        mLayoutParams.flags = flags;
+        mWindowManager.updateViewLayout(mHostLayout, mLayoutParams);
+    }
+
+    private void removeWindow ( @Nonnull TutorialMetricsListener metrics ) {
+        if (!mIsAdded) {
+            return;
+        }
+        try {
+            mWindowManager.removeView(mHostLayout);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        mIsAdded = false;
+        metrics.onWindowManagerCall(false);
+    }
+
+    boolean isAdded ( @Nonnull View tutorial ) {
+        return tutorial.getParent() == mHostLayout;
+    }
+}
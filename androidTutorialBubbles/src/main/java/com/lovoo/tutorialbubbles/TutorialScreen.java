@@ -1,16 +1,20 @@
 package com.lovoo.tutorialbubbles;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.WindowManager;
 
 import com.lovoo.tutorialbubbles.layout.TutorialScreenContainerLayout;
-import com.lovoo.tutorialbubbles.utils.Utils;
+import com.lovoo.tutorialbubbles.utils.TutorialEnvironment;
 
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -33,7 +37,14 @@ public abstract class TutorialScreen {
     //region members
     @Nonnull
     protected Context mContext;
+    @Nonnull
+    protected TutorialScreenContainerLayout mContainerLayout;
     protected boolean mShouldShow = false;
+    protected boolean mKeepAttachedOnPause;
+    protected boolean mIsWarmPaused;
+    @Nonnull
+    TutorialMetricsListener mMetrics = TutorialMetrics.forListener(null);
+    private int mTutorialLayoutRes;
     //endregion
 
     private TutorialScreen () {
@@ -41,6 +52,7 @@ public abstract class TutorialScreen {
 
     TutorialScreen ( TutorialBuilder builder ) {
         mContext = builder.mContext;
+        mKeepAttachedOnPause = builder.mKeepAttachedOnPause;
     }
 
     /**
@@ -50,16 +62,130 @@ public abstract class TutorialScreen {
      */
     protected abstract void init ( TutorialBuilder builder );
 
-    protected final View createContainerLayoutWithTutorial ( TutorialBuilder builder ) {
-        View tutorialLayout = LayoutInflater.from(mContext).inflate(builder.mTutorialLayoutRes, null);
+    /**
+     * removes the container from the screen, also if it is only hidden by a warm pause.
+     */
+    protected abstract void detachTutorial ();
+
+    protected final TutorialScreenContainerLayout createContainerLayoutWithTutorial ( TutorialBuilder builder ) {
+        View tutorialLayout = obtainTutorialLayout(builder);
+        mTutorialLayoutRes = builder.mTutorialLayoutRes;
+
+        mMetrics = TutorialMetrics.forListener(builder.mMetricsListener);
+        TutorialScreenContainerLayout containerLayout = new TutorialScreenContainerLayout(mContext);
+        containerLayout.setMetricsListener(mMetrics);
+        containerLayout.init(tutorialLayout, builder.mAnchorView, getTutorialDimensions());
+        addAdditionalTutorials(containerLayout, builder);
+        applyTutorialStyle(containerLayout, builder);
+
+        containerLayout.setHighlightViews(builder.mHighlightViews);
+
+        int padding = TutorialEnvironment.get(mContext).tutorialPadding;
+        containerLayout.setPadding(padding, padding, padding, padding);
+
+        if (builder.mDismissible != null && builder.mDismissible) {
+            containerLayout.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick ( View v ) {
+                    dismissTutorial();
+                }
+            });
+        }
+
+        return containerLayout;
+    }
+
+    /**
+     * replaces tutorial layout, anchor, style and highlights of this screen with the config of another builder.
+     * the container stays attached, so no window or layout hierarchy changes are needed.
+     *
+     * @param builder the builder of the next tutorial
+     */
+    void swapTutorial ( @Nonnull TutorialBuilder builder ) {
+        View tutorialLayout = obtainTutorialLayout(builder);
+
+        View previousLayout = mContainerLayout.replaceTutorial(tutorialLayout, builder.mAnchorView);
+        if (previousLayout != null) {
+            TutorialLayoutPool.release(mTutorialLayoutRes, previousLayout);
+        }
+        addAdditionalTutorials(mContainerLayout, builder);
+        mTutorialLayoutRes = builder.mTutorialLayoutRes;
+        mMetrics = TutorialMetrics.forListener(builder.mMetricsListener);
+        mContainerLayout.setMetricsListener(mMetrics);
+        mContainerLayout.resetTutorialStyle();
+        applyTutorialStyle(mContainerLayout, builder);
+
+        mContainerLayout.clearHighlightViews();
+        mContainerLayout.setHighlightViews(builder.mHighlightViews);
+    }
+
+    /**
+     * sets a click listener for the area outside of the tutorial layout.
+     *
+     * @param listener the listener, or null to just consume clicks
+     */
+    void setOnContainerClickListener ( @CheckForNull View.OnClickListener listener ) {
+        mContainerLayout.setOnClickListener(listener);
+        mContainerLayout.setClickable(true);
+    }
+
+    /**
+     * returns the prepared tutorial layout of the builder, or creates one if none was prepared.
+     */
+    @Nonnull
+    private View obtainTutorialLayout ( @Nonnull TutorialBuilder builder ) {
+        View tutorialLayout = builder.mPreparedTutorialLayout;
+        if (tutorialLayout != null) {
+            builder.mPreparedTutorialLayout = null;
+            return tutorialLayout;
+        }
+        return createTutorialLayout(builder);
+    }
+
+    /**
+     * takes the tutorial layout of a builder from the {@link TutorialLayoutPool} or inflates it,
+     * then runs its inflation callback to bind the layout.
+     *
+     * @param builder the builder
+     * @return the bound layout
+     */
+    @Nonnull
+    static View createTutorialLayout ( @Nonnull TutorialBuilder builder ) {
+        View tutorialLayout = TutorialLayoutPool.obtain(builder.mTutorialLayoutRes, builder.mContext);
+        if (tutorialLayout == null) {
+            tutorialLayout = LayoutInflater.from(builder.mContext).inflate(builder.mTutorialLayoutRes, null);
+        }
+        dispatchLayoutInflated(builder, tutorialLayout);
+        return tutorialLayout;
+    }
 
+    /**
+     * adds the layouts added with {@link TutorialBuilder#addTutorial(Integer, View)} to the container,
+     * which places them together with the primary tutorial. layouts prepared by
+     * {@link TutorialBuilder#prebuild(Executor, OnTutorialPrebuiltListener)} are used, the others are inflated.
+     */
+    private static void addAdditionalTutorials ( @Nonnull TutorialScreenContainerLayout containerLayout, @Nonnull TutorialBuilder builder ) {
+        LayoutInflater inflater = LayoutInflater.from(builder.mContext);
+        for (AdditionalTutorial additionalTutorial : builder.mAdditionalTutorials) {
+            View tutorialLayout = additionalTutorial.mPreparedLayout;
+            if (tutorialLayout != null) {
+                additionalTutorial.mPreparedLayout = null;
+            } else {
+                tutorialLayout = inflater.inflate(additionalTutorial.mTutorialLayoutRes, null);
+                dispatchLayoutInflated(builder, tutorialLayout);
+            }
+            containerLayout.addTutorial(tutorialLayout, additionalTutorial.mAnchorView);
+        }
+    }
+
+    private static void dispatchLayoutInflated ( @Nonnull TutorialBuilder builder, @Nonnull View tutorialLayout ) {
         // run callback for inflated layout, if set
         if (builder.mTutorialLayoutInflatedListener != null) {
             builder.mTutorialLayoutInflatedListener.onLayoutInflated(tutorialLayout);
         }
+    }
 
-        TutorialScreenContainerLayout containerLayout = new TutorialScreenContainerLayout(mContext);
-        containerLayout.init(tutorialLayout, builder.mAnchorView, getTutorialDimensions());
+    private static void applyTutorialStyle ( @Nonnull TutorialScreenContainerLayout containerLayout, @Nonnull TutorialBuilder builder ) {
         if (builder.mFunnelWidth != null) {
             containerLayout.setFunnelWidth(builder.mFunnelWidth);
         }
@@ -73,22 +199,18 @@ public abstract class TutorialScreen {
         if (builder.mOffset != null) {
             containerLayout.setOffestFromAnchor(builder.mOffset);
         }
-
-        containerLayout.setHighlightViews(builder.mHighlightViews);
-
-        int padding = Utils.dpToPx(mContext, 15);
-        containerLayout.setPadding(padding, padding, padding, padding);
-
-        if (builder.mDismissible != null && builder.mDismissible) {
-            containerLayout.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick ( View v ) {
-                    dismissTutorial();
-                }
-            });
+        if (builder.mAnimated != null) {
+            containerLayout.setAnimated(builder.mAnimated);
+        }
+        if (builder.mFollowAnchor != null) {
+            containerLayout.setFollowAnchor(builder.mFollowAnchor);
+        }
+        if (builder.mPlacementHysteresis != null) {
+            containerLayout.setPlacementHysteresis(builder.mPlacementHysteresis);
+        }
+        if (builder.mRecordBubbles != null) {
+            containerLayout.setRecordBubbles(builder.mRecordBubbles);
         }
-
-        return containerLayout;
     }
 
     //region public methods
@@ -97,16 +219,37 @@ public abstract class TutorialScreen {
      * displays the tutorial on the screen.
      */
     public void showTutorial () {
+        // a tutorial that is still fading out counts as hidden
+        if (!isShowing() || !mShouldShow) {
+            mContainerLayout.markShowRequested();
+            mContainerLayout.animateEnter();
+        }
         mShouldShow = true;
     }
 
     /**
      * dismisses the {@code TutorialScreen} by cleaning up the {@code WindowManager}.
+     * the tutorial is removed after its exit animation, see {@link TutorialBuilder#setAnimated(Boolean)}.
      */
     public void dismissTutorial () {
         mShouldShow = false;
     }
 
+    /**
+     * dismisses the tutorial and hands its layout to the {@link TutorialLayoutPool}, so the next tutorial
+     * with the same layout resource can reuse it. this screen must not be shown again afterwards.
+     */
+    public void recycle () {
+        dismissTutorial();
+        // the layout goes back to the pool right away, so there is no time for the exit animation
+        detachTutorial();
+        mContainerLayout.releaseHighlightMasks();
+        View tutorialLayout = mContainerLayout.removeTutorial();
+        if (tutorialLayout != null) {
+            TutorialLayoutPool.release(mTutorialLayoutRes, tutorialLayout);
+        }
+    }
+
     /**
      * callback that should be called from Android {@code Activity} or {@code Fragment}.
      * removes {@code TutorialScreen}
@@ -119,6 +262,20 @@ public abstract class TutorialScreen {
      */
     public abstract void onResume ();
 
+    /**
+     * callback that should be called from {@code ComponentCallbacks2#onTrimMemory}.
+     * a tutorial that is kept attached during pause (see {@link TutorialBuilder#setKeepAttachedOnPause}) is
+     * detached and drops its highlight masks once the app is in the background list, resume reattaches it.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory ( int level ) {
+        if (mIsWarmPaused && level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            detachTutorial();
+            mContainerLayout.releaseHighlightMasks();
+        }
+    }
+
     /**
      * alter dismiss status after creation.
      *
@@ -141,13 +298,26 @@ public abstract class TutorialScreen {
      */
     public interface OnTutorialLayoutInflatedListener {
         /**
-         * is invoked right after layout inflation.
+         * is invoked right after layout inflation and each time a pooled layout is reused,
+         * so all view state should be bound here.
          *
          * @param view the inflated view
          */
         void onLayoutInflated ( View view );
     }
 
+    /**
+     * implement this interface to receive a tutorial that was prebuilt with {@link TutorialBuilder#prebuild}.
+     */
+    public interface OnTutorialPrebuiltListener {
+        /**
+         * is invoked on the main thread once the tutorial is ready to be shown.
+         *
+         * @param tutorialScreen the built tutorial, null if it could not be built (see {@link TutorialBuilder#build()})
+         */
+        void onTutorialPrebuilt ( @CheckForNull TutorialScreen tutorialScreen );
+    }
+
     protected abstract TutorialScreenContainerLayout.TutorialScreenDimension getTutorialDimensions ();
 
     /**
@@ -173,10 +343,25 @@ public abstract class TutorialScreen {
         protected Boolean mDismissible;
         @Nonnull
         protected ArrayList<HighlightView> mHighlightViews;
+        @Nonnull
+        final ArrayList<AdditionalTutorial> mAdditionalTutorials = new ArrayList<>();
         @CheckForNull
         protected View mParentContainer;
         @CheckForNull
         Integer mOffset;
+        @CheckForNull
+        View mPreparedTutorialLayout;
+        boolean mKeepAttachedOnPause;
+        @CheckForNull
+        TutorialMetricsListener mMetricsListener;
+        @CheckForNull
+        Boolean mAnimated;
+        @CheckForNull
+        Boolean mFollowAnchor;
+        @CheckForNull
+        Float mPlacementHysteresis;
+        @CheckForNull
+        Boolean mRecordBubbles;
 
         /**
          * creates a builder to config and return a {@link TutorialScreen}.
@@ -200,14 +385,111 @@ public abstract class TutorialScreen {
         public TutorialScreen build () {
             if (mParentContainer != null) {
                 return new LayoutManagedTutorialScreen(this);
-            } else if (hasAppWindowManagerPermission()) {
+            } else if (TutorialEnvironment.get(mContext).hasOverlayPermission) {
                 return new WindowManagedTutorialScreen(this);
             }
             return null;
         }
 
         /**
-         * set a listener that will be called each time the layout resource is inflated.
+         * same as {@link #prebuild(Executor, OnTutorialPrebuiltListener)} using {@link AsyncTask#THREAD_POOL_EXECUTOR}.
+         *
+         * @param listener receives the built tutorial on the main thread
+         */
+        public void prebuild ( @Nonnull OnTutorialPrebuiltListener listener ) {
+            prebuild(AsyncTask.THREAD_POOL_EXECUTOR, listener);
+        }
+
+        /**
+         * builds the tutorial asynchronously. the layout resource and the layouts added with
+         * {@link #addTutorial(Integer, View)} are inflated on the given executor, everything else, including the
+         * {@link OnTutorialLayoutInflatedListener}, runs on the main thread.
+         * if a layout can not be inflated off the main thread (e.g. views that need a {@link Looper}) or the
+         * executor rejects the task, it is inflated synchronously instead.
+         *
+         * @param executor executor used for inflation
+         * @param listener receives the built tutorial on the main thread
+         */
+        public void prebuild ( @Nonnull Executor executor, @Nonnull final OnTutorialPrebuiltListener listener ) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            // inflaters are not thread safe, so the worker gets its own
+            final LayoutInflater inflater = LayoutInflater.from(mContext).cloneInContext(mContext);
+            final AdditionalTutorial[] additionalTutorials =
+                    mAdditionalTutorials.toArray(new AdditionalTutorial[mAdditionalTutorials.size()]);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run () {
+                        final View tutorialLayout = inflateOffMainThread(inflater, mTutorialLayoutRes);
+                        final View[] additionalLayouts = new View[additionalTutorials.length];
+                        for (int i = 0; i < additionalTutorials.length; i++) {
+                            additionalLayouts[i] = inflateOffMainThread(inflater, additionalTutorials[i].mTutorialLayoutRes);
+                        }
+
+                        mainHandler.post(new Runnable() {
+                            @Override
+                            public void run () {
+                                if (tutorialLayout != null) {
+                                    dispatchLayoutInflated(TutorialBuilder.this, tutorialLayout);
+                                    mPreparedTutorialLayout = tutorialLayout;
+                                }
+                                for (int i = 0; i < additionalTutorials.length; i++) {
+                                    if (additionalLayouts[i] != null) {
+                                        dispatchLayoutInflated(TutorialBuilder.this, additionalLayouts[i]);
+                                        additionalTutorials[i].mPreparedLayout = additionalLayouts[i];
+                                    }
+                                }
+                                deliverPrebuilt(listener);
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // e.g. a saturated or shut down executor, build() inflates on the main thread
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run () {
+                        deliverPrebuilt(listener);
+                    }
+                });
+            }
+        }
+
+        @CheckForNull
+        private static View inflateOffMainThread ( @Nonnull LayoutInflater inflater, int layoutRes ) {
+            try {
+                return inflater.inflate(layoutRes, null);
+            } catch (RuntimeException e) {
+                // fall back to inflation on the main thread
+                return null;
+            }
+        }
+
+        private void deliverPrebuilt ( @Nonnull OnTutorialPrebuiltListener listener ) {
+            TutorialScreen tutorialScreen = build();
+            if (tutorialScreen == null) {
+                // no screen took the prepared layouts, the pool keeps them for the next tutorial
+                releasePreparedLayouts();
+            }
+            listener.onTutorialPrebuilt(tutorialScreen);
+        }
+
+        private void releasePreparedLayouts () {
+            if (mPreparedTutorialLayout != null) {
+                TutorialLayoutPool.release(mTutorialLayoutRes, mPreparedTutorialLayout);
+                mPreparedTutorialLayout = null;
+            }
+            for (AdditionalTutorial additionalTutorial : mAdditionalTutorials) {
+                if (additionalTutorial.mPreparedLayout != null) {
+                    TutorialLayoutPool.release(additionalTutorial.mTutorialLayoutRes, additionalTutorial.mPreparedLayout);
+                    additionalTutorial.mPreparedLayout = null;
+                }
+            }
+        }
+
+        /**
+         * set a listener that will be called each time the layout resource is inflated
+         * or a pooled layout is reused (see {@link TutorialLayoutPool}).
          *
          * @param listener the listener
          * @return this builder
@@ -265,7 +547,7 @@ public abstract class TutorialScreen {
          * adds a view that wont be dimmed by the background.
          *
          * @param view                the highlighted view
-         * @param useViewBoundsAsMask true if the rectangular bounds of the view can be used, false if drawing cache should be used
+         * @param useViewBoundsAsMask true if the rectangular bounds of the view can be used, false if an alpha mask of the view should be used
          *                            (slower but non rectangular views will be supported)
          * @return this builder
          */
@@ -274,6 +556,21 @@ public abstract class TutorialScreen {
             return this;
         }
 
+        /**
+         * adds another tutorial layout with its own anchor to the same tutorial screen. all layouts are placed in one
+         * layout pass without overlapping each other or each others anchors, and share one dimmed background,
+         * so several hints can be shown at once. the {@link OnTutorialLayoutInflatedListener} is called for every
+         * layout.
+         *
+         * @param tutorialLayoutRes a layout resource
+         * @param anchorView        a view at which the layout resource will be displayed to
+         * @return this builder
+         */
+        public TutorialBuilder addTutorial ( @Nonnull Integer tutorialLayoutRes, @Nonnull View anchorView ) {
+            this.mAdditionalTutorials.add(new AdditionalTutorial(tutorialLayoutRes, anchorView));
+            return this;
+        }
+
         /**
          * sets the parent layout, at which the {@code TutorialScreen} will be added to.
          *
@@ -285,6 +582,82 @@ public abstract class TutorialScreen {
             return this;
         }
 
+        /**
+         * keeps the tutorial attached during {@link TutorialScreen#onPause()} and only hides it, so
+         * {@link TutorialScreen#onResume()} shows it again without a new measure and layout pass.
+         * {@link TutorialScreen#onTrimMemory(int)} should be relayed to release the hidden tutorial
+         * when the app stays in the background. window managed tutorials keep their overlay window without
+         * taking touches until the ui of the app is hidden, then the window is removed and added again on resume.
+         *
+         * @param keepAttached true to hide instead of detach, false by default
+         * @return this builder
+         */
+        public TutorialBuilder setKeepAttachedOnPause ( boolean keepAttached ) {
+            this.mKeepAttachedOnPause = keepAttached;
+            return this;
+        }
+
+        /**
+         * sets a listener that receives the cost counters of this tutorial, in addition to the global listener
+         * of {@link TutorialMetrics}.
+         *
+         * @param listener the listener
+         * @return this builder
+         */
+        public TutorialBuilder setMetricsListener ( TutorialMetricsListener listener ) {
+            this.mMetricsListener = listener;
+            return this;
+        }
+
+        /**
+         * sets wether the tutorial fades in and out. the bubble grows out of its anchor when shown.
+         * animations run on devices with JELLY_BEAN or above, enabled by default.
+         *
+         * @param animated true if animated, false otherwise
+         * @return this builder
+         */
+        public TutorialBuilder setAnimated ( Boolean animated ) {
+            this.mAnimated = animated;
+            return this;
+        }
+
+        /**
+         * sets wether the bubble follows its anchor in every frame, e.g. for anchors in scrolling lists or
+         * collapsing toolbars. moving the bubble along needs neither a measure nor a layout pass.
+         *
+         * @param followAnchor true to follow the anchor, false by default
+         * @return this builder
+         */
+        public TutorialBuilder setFollowAnchor ( Boolean followAnchor ) {
+            this.mFollowAnchor = followAnchor;
+            return this;
+        }
+
+        /**
+         * sets how much better another side of the anchor has to fit before the bubble moves there, so bubbles
+         * near the screen midlines do not flip sides while the anchor scrolls.
+         *
+         * @param margin relative advantage, e.g. {@code 0.15f} for 15% (the default), {@code 0} to always take the best side
+         * @return this builder
+         */
+        public TutorialBuilder setPlacementHysteresis ( Float margin ) {
+            this.mPlacementHysteresis = margin;
+            return this;
+        }
+
+        /**
+         * sets wether bubble backgrounds are recorded once and replayed, which makes redraws during animations and
+         * highlight updates cheaper. replaying on hardware accelerated windows needs marshmallow, older versions
+         * draw the bubble directly.
+         *
+         * @param recordBubbles true to record, false by default
+         * @return this builder
+         */
+        public TutorialBuilder setRecordBubbles ( Boolean recordBubbles ) {
+            this.mRecordBubbles = recordBubbles;
+            return this;
+        }
+
         /**
          * sets the offset from the anchor view.
          *
@@ -295,21 +668,19 @@ public abstract class TutorialScreen {
             this.mOffset = offset;
             return this;
         }
+    }
 
-        private boolean hasAppWindowManagerPermission () {
-            try {
-                PackageInfo info = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), PackageManager.GET_PERMISSIONS);
-                if (info.requestedPermissions != null) {
-                    for (String p : info.requestedPermissions) {
-                        if (p.equals("android.permission.SYSTEM_ALERT_WINDOW")) {
-                            return true;
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            return false;
+    static class AdditionalTutorial {
+        final int mTutorialLayoutRes;
+        @Nonnull
+        final View mAnchorView;
+        // inflated by prebuild, taken by the first screen built afterwards
+        @CheckForNull
+        View mPreparedLayout;
+
+        AdditionalTutorial ( int tutorialLayoutRes, @Nonnull View anchorView ) {
+            this.mTutorialLayoutRes = tutorialLayoutRes;
+            this.mAnchorView = anchorView;
         }
     }
 
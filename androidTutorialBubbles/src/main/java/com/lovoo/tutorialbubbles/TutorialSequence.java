@@ -0,0 +1,256 @@
+package com.lovoo.tutorialbubbles;
+
+import android.view.View;
+
+import java.util.ArrayList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Shows several tutorials one after another as a tour.
+ * <p>
+ * Every step is configured with its own {@link TutorialScreen.TutorialBuilder}. Only the first step creates a
+ * {@link TutorialScreen}, all following steps swap bubble layout, anchor and highlights within the same container,
+ * so the overlay stays attached for the whole tour. While a step is showing, the layout of the next step is inflated
+ * and measured in advance.
+ * <p>
+ * The first builder decides whether the tour is layout or window managed, parent layouts of later steps are ignored.
+ * As with {@link TutorialScreen}, {@link #onPause()} and {@link #onResume()} have to be relayed for window managed tours.
+ */
+public class TutorialSequence {
+
+    //region members
+    @Nonnull
+    private final ArrayList<TutorialScreen.TutorialBuilder> mSteps;
+    @CheckForNull
+    private final OnTutorialSequenceListener mListener;
+    @CheckForNull
+    private TutorialScreen mScreen;
+    private int mCurrentStep = -1;
+
+    private final Runnable mPrepareNextStep = new Runnable() {
+        @Override
+        public void run () {
+            prepareStep(mCurrentStep + 1);
+        }
+    };
+
+    private final View.OnClickListener mNextStepClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick ( View v ) {
+            next();
+        }
+    };
+    //endregion
+
+    private TutorialSequence ( @Nonnull SequenceBuilder builder ) {
+        mSteps = new ArrayList<>(builder.mSteps);
+        mListener = builder.mListener;
+    }
+
+    //region public methods
+
+    /**
+     * shows the first step of the tour.
+     */
+    public void start () {
+        if (mSteps.isEmpty()) {
+            return;
+        }
+        showStep(0);
+    }
+
+    /**
+     * shows the next step of the tour or finishes the tour if the current step is the last one.
+     *
+     * @return true if another step is shown, false if the tour finished
+     */
+    public boolean next () {
+        if (mCurrentStep < 0) {
+            return false;
+        }
+        if (mCurrentStep + 1 >= mSteps.size()) {
+            dismiss();
+            return false;
+        }
+        showStep(mCurrentStep + 1);
+        return true;
+    }
+
+    /**
+     * ends the tour and removes the tutorial from the screen.
+     */
+    public void dismiss () {
+        if (mCurrentStep < 0) {
+            return;
+        }
+        if (mScreen != null) {
+            mScreen.mContainerLayout.removeCallbacks(mPrepareNextStep);
+            mScreen.dismissTutorial();
+        }
+        for (TutorialScreen.TutorialBuilder step : mSteps) {
+            if (step.mPreparedTutorialLayout != null) {
+                TutorialLayoutPool.release(step.mTutorialLayoutRes, step.mPreparedTutorialLayout);
+                step.mPreparedTutorialLayout = null;
+            }
+        }
+        mCurrentStep = -1;
+
+        if (mListener != null) {
+            mListener.onSequenceFinished();
+        }
+    }
+
+    /**
+     * callback that should be called from Android {@code Activity} or {@code Fragment}.
+     */
+    public void onPause () {
+        if (mScreen != null) {
+            mScreen.onPause();
+        }
+    }
+
+    /**
+     * callback that should be called from Android {@code Activity} or {@code Fragment}.
+     */
+    public void onResume () {
+        if (mScreen != null) {
+            mScreen.onResume();
+        }
+    }
+
+    /**
+     * callback that should be called from {@code ComponentCallbacks2#onTrimMemory}.
+     *
+     * @param level the trim memory level
+     */
+    public void onTrimMemory ( int level ) {
+        if (mScreen != null) {
+            mScreen.onTrimMemory(level);
+        }
+    }
+
+    /**
+     * returns the index of the current step.
+     *
+     * @return current step, -1 if the tour is not showing
+     */
+    public int getCurrentStep () {
+        return mCurrentStep;
+    }
+
+    public int getStepCount () {
+        return mSteps.size();
+    }
+
+    public boolean isShowing () {
+        return mScreen != null && mScreen.isShowing();
+    }
+    //endregion
+
+    private void showStep ( int step ) {
+        TutorialScreen.TutorialBuilder builder = mSteps.get(step);
+
+        if (mScreen == null) {
+            mScreen = builder.build();
+            if (mScreen == null) {
+                return;
+            }
+        } else if (mCurrentStep != step) {
+            mScreen.mContainerLayout.removeCallbacks(mPrepareNextStep);
+            mScreen.swapTutorial(builder);
+        }
+
+        mCurrentStep = step;
+        // outside clicks advance the tour for dismissible steps
+        mScreen.setOnContainerClickListener(builder.mDismissible != null && builder.mDismissible ? mNextStepClickListener : null);
+        mScreen.showTutorial();
+
+        if (mListener != null) {
+            mListener.onStepShown(step);
+        }
+
+        if (step + 1 < mSteps.size()) {
+            mScreen.mContainerLayout.post(mPrepareNextStep);
+        }
+    }
+
+    private void prepareStep ( int step ) {
+        if (step < 0 || step >= mSteps.size()) {
+            return;
+        }
+        TutorialScreen.TutorialBuilder builder = mSteps.get(step);
+        if (builder.mPreparedTutorialLayout != null) {
+            return;
+        }
+
+        View tutorialLayout = TutorialScreen.createTutorialLayout(builder);
+        // warm up text layouts and drawables, the final measure happens within the container
+        tutorialLayout.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        builder.mPreparedTutorialLayout = tutorialLayout;
+    }
+
+    //region inner classes
+
+    /**
+     * implement this interface to follow the progress of a tour.
+     */
+    public interface OnTutorialSequenceListener {
+        /**
+         * is invoked after a step has been shown.
+         *
+         * @param step index of the step
+         */
+        void onStepShown ( int step );
+
+        /**
+         * is invoked after the last step was left or the tour was dismissed.
+         */
+        void onSequenceFinished ();
+    }
+
+    /**
+     * builder class that composes a TutorialSequence instance.
+     */
+    public static class SequenceBuilder {
+
+        @Nonnull
+        private final ArrayList<TutorialScreen.TutorialBuilder> mSteps = new ArrayList<>();
+        @CheckForNull
+        private OnTutorialSequenceListener mListener;
+
+        /**
+         * adds a step to the tour. steps are shown in the order they are added.
+         *
+         * @param step a configured tutorial builder
+         * @return this builder
+         */
+        public SequenceBuilder addStep ( @Nonnull TutorialScreen.TutorialBuilder step ) {
+            mSteps.add(step);
+            return this;
+        }
+
+        /**
+         * sets a listener that follows the progress of the tour.
+         *
+         * @param listener the listener
+         * @return this builder
+         */
+        public SequenceBuilder setOnTutorialSequenceListener ( OnTutorialSequenceListener listener ) {
+            mListener = listener;
+            return this;
+        }
+
+        /**
+         * called after all configuation is done.
+         *
+         * @return TutorialSequence Instance
+         */
+        public TutorialSequence build () {
+            return new TutorialSequence(this);
+        }
+    }
+    //endregion
+}
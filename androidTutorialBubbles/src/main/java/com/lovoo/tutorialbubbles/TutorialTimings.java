@@ -0,0 +1,84 @@
+package com.lovoo.tutorialbubbles;
+
+import com.lovoo.tutorialbubbles.utils.LatencyHistogram;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Process wide timing histograms of all tutorials.
+ * <p>
+ * Records how long it takes from {@link TutorialScreen#showTutorial()} until the bubble is drawn for the first
+ * time, and how long each measure, layout and draw pass of the tutorial container takes. All values are in
+ * nanoseconds. Recording is cheap enough for production builds, read the histograms or copy them with
+ * {@link LatencyHistogram#copyInto(LatencyHistogram)} to upload aggregates.
+ */
+public final class TutorialTimings {
+
+    private static final LatencyHistogram sShowLatency = new LatencyHistogram();
+    private static final LatencyHistogram sMeasureDuration = new LatencyHistogram();
+    private static final LatencyHistogram sLayoutDuration = new LatencyHistogram();
+    private static final LatencyHistogram sDrawDuration = new LatencyHistogram();
+
+    private static volatile boolean sEnabled = true;
+
+    private TutorialTimings () {
+    }
+
+    /**
+     * enables or disables recording, enabled by default.
+     *
+     * @param enabled false to skip all timing
+     */
+    public static void setEnabled ( boolean enabled ) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled () {
+        return sEnabled;
+    }
+
+    /**
+     * without animations the bubble is drawn for the first time when it is shown, with animations it is
+     * shown once its enter animation ended, so the enter duration is part of the latency.
+     *
+     * @return time from showing a tutorial until its bubble is fully shown
+     */
+    @Nonnull
+    public static LatencyHistogram getShowLatency () {
+        return sShowLatency;
+    }
+
+    /**
+     * @return duration of the measure passes of tutorial containers, including skipped passes
+     */
+    @Nonnull
+    public static LatencyHistogram getMeasureDuration () {
+        return sMeasureDuration;
+    }
+
+    /**
+     * @return duration of the layout passes of tutorial containers
+     */
+    @Nonnull
+    public static LatencyHistogram getLayoutDuration () {
+        return sLayoutDuration;
+    }
+
+    /**
+     * @return duration of drawing tutorial containers including the bubble, on the ui thread
+     */
+    @Nonnull
+    public static LatencyHistogram getDrawDuration () {
+        return sDrawDuration;
+    }
+
+    /**
+     * removes all recorded values.
+     */
+    public static void reset () {
+        sShowLatency.reset();
+        sMeasureDuration.reset();
+        sLayoutDuration.reset();
+        sDrawDuration.reset();
+    }
+}
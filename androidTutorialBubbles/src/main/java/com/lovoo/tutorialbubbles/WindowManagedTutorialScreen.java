@@ -1,18 +1,17 @@
 package com.lovoo.tutorialbubbles;
 
-import android.content.Context;
-import android.graphics.PixelFormat;
+import android.content.ComponentCallbacks2;
 import android.view.View;
 import android.view.WindowManager;
 
-import com.lovoo.tutorialbubbles.utils.Utils;
+import com.lovoo.tutorialbubbles.utils.TutorialEnvironment;
 import com.lovoo.tutorialbubbles.layout.TutorialScreenContainerLayout;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
  * This implementation of TutorialScreen uses androids {@link WindowManager} to display a tutorial popup.
+ * All window managed tutorials share one overlay window, see {@link TutorialOverlayWindow}.
  * It requires SYSTEM_ALERT_WINDOW permission in order to work.
  *
  * @author Johannes Braun
@@ -22,42 +21,41 @@ public class WindowManagedTutorialScreen extends TutorialScreen {
     public static final String TAG = WindowManagedTutorialScreen.class.getSimpleName();
 
     @Nonnull
-    private WindowManager mWindowManager;
-    @CheckForNull
-    private WindowEntry mAddedView;
+    private final TutorialOverlayWindow mOverlayWindow;
 
     protected WindowManagedTutorialScreen ( @Nonnull TutorialBuilder builder ) {
         super(builder);
-        mWindowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        mOverlayWindow = TutorialOverlayWindow.get(mContext);
         init(builder);
     }
 
     @Override
     protected void init ( TutorialBuilder builder ) {
-        View containerLayout = createContainerLayoutWithTutorial(builder);
+        mContainerLayout = createContainerLayoutWithTutorial(builder);
+        updateLayerType();
+        // keeps touches away from tutorials below within the shared window
+        mContainerLayout.setClickable(true);
+    }
+
+    @Override
+    void swapTutorial ( @Nonnull TutorialBuilder builder ) {
+        super.swapTutorial(builder);
+        updateLayerType();
+    }
 
-        int flags;
-        if (Utils.isWindowTranslucent(mContext)) {
-            flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                    | WindowManager.LayoutParams.FLAG_FULLSCREEN
-                    | WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS;
+    private void updateLayerType () {
+        if (mContainerLayout.requiresDimLayer()) {
+            // the CLEAR xfermode of bitmap masks would also cut through other tutorials in the shared window
+            mContainerLayout.updateLayerType(View.LAYER_TYPE_HARDWARE);
         } else {
-            flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
-                    | WindowManager.LayoutParams.FLAG_FULLSCREEN;
+            mContainerLayout.updateLayerType(View.LAYER_TYPE_NONE);
         }
-
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(WindowManager.LayoutParams.MATCH_PARENT,
-                WindowManager.LayoutParams.MATCH_PARENT,
-                WindowManager.LayoutParams.TYPE_PHONE,
-                flags,
-                PixelFormat.TRANSLUCENT);
-
-        mAddedView = new WindowEntry(containerLayout, params, false);
     }
 
     @Override
     protected TutorialScreenContainerLayout.TutorialScreenDimension getTutorialDimensions () {
-        return new TutorialScreenContainerLayout.TutorialScreenDimension(Utils.getDisplayWidth(mContext), Utils.getDisplayHeight(mContext), true);
+        TutorialEnvironment environment = TutorialEnvironment.get(mContext);
+        return new TutorialScreenContainerLayout.TutorialScreenDimension(environment.displayWidth, environment.displayHeight, true);
     }
 
     @Override
@@ -68,72 +66,76 @@ public class WindowManagedTutorialScreen extends TutorialScreen {
 
     @Override
     public void dismissTutorial () {
-        removeViewsFromWindow();
         super.dismissTutorial();
+        mContainerLayout.animateExit(new Runnable() {
+            @Override
+            public void run () {
+                // shown again while fading out
+                if (mShouldShow) {
+                    return;
+                }
+                removeViewsFromWindow();
+                mContainerLayout.releaseHighlightMasks();
+            }
+        });
     }
 
     @Override
     public boolean isShowing () {
-        if (mAddedView == null) {
-            return false;
-        }
-        return mAddedView.isAdded;
+        return !mIsWarmPaused && mOverlayWindow.isAdded(mContainerLayout);
     }
 
     @Override
     public void onPause () {
-        removeViewsFromWindow();
+        // a dismissed tutorial that is still fading out is removed, its exit end action runs right away
+        if (mKeepAttachedOnPause && isShowing() && mShouldShow) {
+            // stays in the host layout with its measurements and the overlay window stays added without taking
+            // touches, resume only flips the visibility. onTrimMemory removes the window in the background
+            mOverlayWindow.setTutorialVisible(mContainerLayout, false, mMetrics);
+            mIsWarmPaused = true;
+        } else {
+            removeViewsFromWindow();
+        }
     }
 
     @Override
     public void onResume () {
-        addViewsToWindow();
-    }
-
-    @Override
-    public void setDismissible ( boolean dismissible ) {
-        if (mAddedView != null) {
-            if (dismissible) {
-                mAddedView.view.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick ( View v ) {
-                        dismissTutorial();
-                    }
-                });
-            } else {
-                mAddedView.view.setOnClickListener(null);
-            }
+        if (mIsWarmPaused) {
+            mIsWarmPaused = false;
+            mOverlayWindow.setTutorialVisible(mContainerLayout, true, mMetrics);
+        } else {
+            addViewsToWindow();
         }
     }
 
-    //region privat and protected internal methods
-    private void addViewsToWindow () {
-        if (!mShouldShow || mAddedView == null) {
-            return;
-        }
-
-        if (!mAddedView.isAdded) {
-            mWindowManager.addView(mAddedView.view, mAddedView.layoutParams);
-            mAddedView.isAdded = true;
+    @Override
+    public void onTrimMemory ( int level ) {
+        if (mIsWarmPaused && level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // the app is not visible anymore, the hidden overlay must not stay above other apps
+            mOverlayWindow.releaseHiddenWindow(mMetrics);
         }
+        super.onTrimMemory(level);
     }
 
-    private void removeViewsFromWindow () {
-        if (mAddedView != null) {
-            if (mAddedView.isAdded) {
-                try {
-                    mWindowManager.removeView(mAddedView.view);
-                } catch (IllegalArgumentException e) {
-                    e.printStackTrace();
+    @Override
+    public void setDismissible ( boolean dismissible ) {
+        if (dismissible) {
+            mContainerLayout.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick ( View v ) {
+                    dismissTutorial();
                 }
-            }
-            mAddedView.isAdded = false;
+            });
+        } else {
+            mContainerLayout.setOnClickListener(null);
         }
     }
 
     /**
-     * encapsulates entry, that can be added to or removed from the WindowManager.
+     * @deprecated window managed tutorials share one window now, see {@link TutorialOverlayWindow}.
+     * this class is not used anymore and will be removed.
      */
+    @Deprecated
     protected static class WindowEntry {
         View view;
         WindowManager.LayoutParams layoutParams;
@@ -145,4 +147,25 @@ public class WindowManagedTutorialScreen extends TutorialScreen {
             this.isAdded = isAdded;
         }
     }
+
+    //region privat and protected internal methods
+    private void addViewsToWindow () {
+        if (!mShouldShow) {
+            return;
+        }
+        mOverlayWindow.addTutorial(mContainerLayout, mMetrics);
+    }
+
+    private void removeViewsFromWindow () {
+        // a running exit animation ends here, its end action runs before the container is removed
+        mContainerLayout.cancelAnimations();
+        mIsWarmPaused = false;
+        mOverlayWindow.removeTutorial(mContainerLayout, mMetrics);
+    }
+
+    @Override
+    protected void detachTutorial () {
+        removeViewsFromWindow();
+    }
+    //endregion
 }
@@ -5,14 +5,18 @@ import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.view.Gravity;
 
+import com.lovoo.tutorialbubbles.TutorialMetricsListener;
 import com.lovoo.tutorialbubbles.utils.Vector2D;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -43,7 +47,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setBubbleColor ( int color ) {
-            mDrawable.mBubblePaint.setColor(color);
+            if (mDrawable.mBubblePaint.getColor() != color) {
+                mDrawable.mBubblePaint.setColor(color);
+                mDrawable.mNeedsRedraw = true;
+            }
             return this;
         }
 
@@ -53,7 +60,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setEdgeColor ( int color ) {
-            mDrawable.mEdgePaint.setColor(color);
+            if (mDrawable.mEdgePaint.getColor() != color) {
+                mDrawable.mEdgePaint.setColor(color);
+                mDrawable.mNeedsRedraw = true;
+            }
             return this;
         }
 
@@ -63,7 +73,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setEdgeThickness ( float thickness ) {
-            mDrawable.mEdgePaint.setStrokeWidth(thickness);
+            if (mDrawable.mEdgePaint.getStrokeWidth() != thickness) {
+                mDrawable.mEdgePaint.setStrokeWidth(thickness);
+                mDrawable.mPathDirty = true;
+            }
             return this;
         }
 
@@ -73,7 +86,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setBubbleCorner ( int corner ) {
-            mDrawable.mBubbleCorner = corner;
+            if (mDrawable.mBubbleCorner != corner) {
+                mDrawable.mBubbleCorner = corner;
+                mDrawable.mPathDirty = true;
+            }
             return this;
         }
 
@@ -83,7 +99,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setFunnelWidth ( int width ) {
-            mDrawable.mFunnelWidth = width;
+            if (mDrawable.mFunnelWidth != width) {
+                mDrawable.mFunnelWidth = width;
+                mDrawable.mPathDirty = true;
+            }
             return this;
         }
 
@@ -94,7 +113,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setFunnelPointRelative ( float middlePointRelative ) {
-            mDrawable.mFunnelStartRelative = middlePointRelative;
+            if (mDrawable.mFunnelStartRelative != middlePointRelative) {
+                mDrawable.mFunnelStartRelative = middlePointRelative;
+                mDrawable.mPathDirty = true;
+            }
             return this;
         }
 
@@ -104,7 +126,10 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setFunnelGravity ( int gravity ) {
-            mDrawable.mFunnelGravity = gravity;
+            if (mDrawable.mFunnelGravity != gravity) {
+                mDrawable.mFunnelGravity = gravity;
+                mDrawable.mPathDirty = true;
+            }
             return this;
         }
 
@@ -116,16 +141,46 @@ public class BubbleDrawable extends Drawable {
          * @return current instance
          */
         public BubbleBuilder setFunnelVector ( int x, int y ) {
-            mDrawable.mFunnelVector = new Vector2D(x, y);
+            if (mDrawable.mFunnelVector == null) {
+                mDrawable.mFunnelVector = new Vector2D(x, y);
+                mDrawable.mPathDirty = true;
+            } else if (mDrawable.mFunnelVector.x != x || mDrawable.mFunnelVector.y != y) {
+                mDrawable.mFunnelVector.set(x, y);
+                mDrawable.mPathDirty = true;
+            }
+            return this;
+        }
+
+        /**
+         * Record fill and edge into a {@link Picture}, which is replayed until geometry or paint change.
+         * Replaying needs a software canvas or Marshmallow, older hardware canvases draw the path directly.
+         * @param enabled target value, {@code false} by default
+         * @return current instance
+         */
+        public BubbleBuilder setRecordingEnabled ( boolean enabled ) {
+            if (mDrawable.mRecordingEnabled != enabled) {
+                mDrawable.mRecordingEnabled = enabled;
+                mDrawable.mRecording = null;
+                mDrawable.mNeedsRedraw = true;
+            }
             return this;
         }
 
         /**
          * Finish current configuration.
+         * The bubble path is only rebuilt if its geometry changed since the last build.
          * @return created or re-configured Drawable
          */
         public BubbleDrawable build () {
-            mDrawable.initPath();
+            if (mDrawable.mPathDirty) {
+                mDrawable.initPath();
+                mDrawable.mNeedsRedraw = true;
+            }
+            if (mDrawable.mNeedsRedraw) {
+                mDrawable.mNeedsRedraw = false;
+                mDrawable.mRecordingDirty = true;
+                mDrawable.invalidateSelf();
+            }
             return mDrawable;
         }
     }
@@ -141,6 +196,20 @@ public class BubbleDrawable extends Drawable {
     private Path mBubblePath;
     private Paint mBubblePaint;
     private Paint mEdgePaint;
+    private boolean mPathDirty;
+    private boolean mNeedsRedraw;
+
+    private boolean mRecordingEnabled;
+    @CheckForNull
+    private Picture mRecording;
+    private boolean mRecordingDirty;
+
+    @CheckForNull
+    private TutorialMetricsListener mMetricsListener;
+
+    private final BubbleShapeCache.ShapeKey mShapeKey = new BubbleShapeCache.ShapeKey();
+    private final BubbleGeometry mGeometry = new BubbleGeometry();
+    private final RectF mArcBounds = new RectF();
     //endregion
 
     /**
@@ -172,143 +241,104 @@ public class BubbleDrawable extends Drawable {
     }
 
     private void initPath () {
-
-        mBubblePath = new Path();
-
-        Rect r = new Rect(getBounds());
-
-        if (mEdgePaint != null) {
-            int strokeHalfSize = (int) (mEdgePaint.getStrokeWidth() / 2f);
-            r.left += strokeHalfSize;
-            r.top += strokeHalfSize;
-            r.right -= strokeHalfSize;
-            r.bottom -= strokeHalfSize;
+        Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            // nothing to draw yet, onBoundsChange builds the path once the drawable is sized
+            mBubblePath = null;
+            mPathDirty = false;
+            return;
         }
 
-        switch (mFunnelGravity) {
-            case Gravity.LEFT:
-                r.left += Math.abs(mFunnelVector.x);
-                break;
-            case Gravity.RIGHT:
-                r.right -= Math.abs(mFunnelVector.x);
-                break;
-            case Gravity.TOP:
-                r.top += Math.abs(mFunnelVector.y);
-                break;
-            case Gravity.BOTTOM:
-                r.bottom -= Math.abs(mFunnelVector.y);
-                break;
-            default:
-                break;
+        mShapeKey.left = bounds.left;
+        mShapeKey.top = bounds.top;
+        mShapeKey.right = bounds.right;
+        mShapeKey.bottom = bounds.bottom;
+        mShapeKey.edgeThickness = mEdgePaint != null ? mEdgePaint.getStrokeWidth() : 0f;
+        mShapeKey.corner = mBubbleCorner;
+        mShapeKey.funnelGravity = mFunnelGravity;
+        mShapeKey.funnelWidth = mFunnelWidth;
+        mShapeKey.funnelStart = mFunnelStartRelative;
+        mShapeKey.funnelVectorX = mFunnelVector != null ? mFunnelVector.x : 0f;
+        mShapeKey.funnelVectorY = mFunnelVector != null ? mFunnelVector.y : 0f;
+
+        // bubbles with the same geometry share one path, which is never modified once it is cached
+        mRecordingDirty = true;
+        Path cachedPath = BubbleShapeCache.get(mShapeKey);
+        if (cachedPath != null) {
+            mBubblePath = cachedPath;
+            mPathDirty = false;
+            if (mMetricsListener != null) {
+                mMetricsListener.onBubblePathRebuilt(true);
+            }
+            return;
         }
 
+        mBubblePath = new Path();
+        BubbleGeometry g = mGeometry;
+        g.calc(mShapeKey);
+
         //start
-        mBubblePath.moveTo(r.left + mBubbleCorner, r.top);
+        mBubblePath.moveTo(g.left + mBubbleCorner, g.top);
 
-        intersectFunnel(r, Gravity.TOP);
+        intersectFunnel(Gravity.TOP);
 
         //top horizontal line.
-        mBubblePath.lineTo(r.right - mBubbleCorner, r.top);
+        mBubblePath.lineTo(g.right - mBubbleCorner, g.top);
 
         //top right arc
         int arc = mBubbleCorner * 2;
-        mBubblePath.arcTo(new RectF(r.right - arc, r.top, r.right, r.top + arc), 270, 90);
+        mArcBounds.set(g.right - arc, g.top, g.right, g.top + arc);
+        mBubblePath.arcTo(mArcBounds, 270, 90);
 
-        intersectFunnel(r, Gravity.RIGHT);
+        intersectFunnel(Gravity.RIGHT);
 
         //right vertical line.
-        mBubblePath.lineTo(r.right, r.bottom - mBubbleCorner);
+        mBubblePath.lineTo(g.right, g.bottom - mBubbleCorner);
 
         //bottom right arc.
-        mBubblePath.arcTo(new RectF(r.right - arc, r.bottom - arc, r.right, r.bottom), 0, 90);
+        mArcBounds.set(g.right - arc, g.bottom - arc, g.right, g.bottom);
+        mBubblePath.arcTo(mArcBounds, 0, 90);
 
-        intersectFunnel(r, Gravity.BOTTOM);
+        intersectFunnel(Gravity.BOTTOM);
 
         //bottom horizontal line.
-        mBubblePath.lineTo(r.left + mBubbleCorner, r.bottom);
+        mBubblePath.lineTo(g.left + mBubbleCorner, g.bottom);
 
         //bottom left arc.
-        mBubblePath.arcTo(new RectF(r.left, r.bottom - arc, r.left + arc, r.bottom), 90, 90);
+        mArcBounds.set(g.left, g.bottom - arc, g.left + arc, g.bottom);
+        mBubblePath.arcTo(mArcBounds, 90, 90);
 
-        intersectFunnel(r, Gravity.LEFT);
+        intersectFunnel(Gravity.LEFT);
 
         //left horizontal line.
-        mBubblePath.lineTo(r.left, r.top + mBubbleCorner);
+        mBubblePath.lineTo(g.left, g.top + mBubbleCorner);
 
         //top right arc.
-        mBubblePath.arcTo(new RectF(r.left, r.top, r.left + arc, r.top + arc), 180, 90);
+        mArcBounds.set(g.left, g.top, g.left + arc, g.top + arc);
+        mBubblePath.arcTo(mArcBounds, 180, 90);
 
         mBubblePath.close();
+        mPathDirty = false;
+
+        BubbleShapeCache.put(mShapeKey, mBubblePath);
+        if (mMetricsListener != null) {
+            mMetricsListener.onBubblePathRebuilt(false);
+        }
     }
 
-    private void intersectFunnel ( Rect r, int gravity ) {
-        if (gravity != mFunnelGravity) {
+    void setMetricsListener ( @CheckForNull TutorialMetricsListener listener ) {
+        mMetricsListener = listener;
+    }
+
+    private void intersectFunnel ( int gravity ) {
+        if (gravity != mGeometry.funnelGravity) {
             return;
         }
 
-        float lineToX;
-        float lineToY;
-        float halfFunnelSize = mFunnelWidth / 2f;
-
-        switch (gravity) {
-            case Gravity.LEFT:
-                lineToX = r.left;
-                lineToY = ((r.bottom - (mBubbleCorner * 2)) * mFunnelStartRelative) + halfFunnelSize + mBubbleCorner;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX -= Math.abs(mFunnelVector.x);
-                lineToY += mFunnelVector.y - halfFunnelSize;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX = r.left;
-                lineToY = lineToY - mFunnelVector.y - halfFunnelSize;
-                mBubblePath.lineTo(lineToX, lineToY);
-                break;
-
-            case Gravity.RIGHT:
-                lineToX = r.right;
-                lineToY = ((r.bottom - (mBubbleCorner * 2)) * mFunnelStartRelative) - halfFunnelSize + mBubbleCorner;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX += Math.abs(mFunnelVector.x);
-                lineToY += mFunnelVector.y + halfFunnelSize;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX = r.right;
-                lineToY = lineToY - mFunnelVector.y + halfFunnelSize;
-                mBubblePath.lineTo(lineToX, lineToY);
-                break;
-
-            case Gravity.TOP:
-                lineToX = ((r.right - (mBubbleCorner * 2)) * mFunnelStartRelative) - halfFunnelSize + mBubbleCorner;
-                lineToY = r.top;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX += mFunnelVector.x + halfFunnelSize;
-                lineToY -= Math.abs(mFunnelVector.y);
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX = lineToX - mFunnelVector.x + halfFunnelSize;
-                lineToY = r.top;
-                mBubblePath.lineTo(lineToX, lineToY);
-                break;
-
-            case Gravity.BOTTOM:
-                lineToX = ((r.right - (mBubbleCorner * 2)) * mFunnelStartRelative) + halfFunnelSize + mBubbleCorner;
-                lineToY = r.bottom;
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX += mFunnelVector.x - halfFunnelSize;
-                lineToY += Math.abs(mFunnelVector.y);
-                mBubblePath.lineTo(lineToX, lineToY);
-
-                lineToX = lineToX - mFunnelVector.x - halfFunnelSize;
-                lineToY = r.bottom;
-                mBubblePath.lineTo(lineToX, lineToY);
-                break;
-            default:
-                break;
-        }
+        float[] funnel = mGeometry.funnel;
+        mBubblePath.lineTo(funnel[0], funnel[1]);
+        mBubblePath.lineTo(funnel[2], funnel[3]);
+        mBubblePath.lineTo(funnel[4], funnel[5]);
     }
     //endregion
 
@@ -355,6 +385,10 @@ public class BubbleDrawable extends Drawable {
     public Vector2D getFunnelVector () {
         return mFunnelVector;
     }
+
+    public boolean isRecordingEnabled () {
+        return mRecordingEnabled;
+    }
     //endregion
 
     //region implemented methods
@@ -368,8 +402,11 @@ public class BubbleDrawable extends Drawable {
     public void setAlpha ( int alpha ) {
         initPaint();
 
-        mBubblePaint.setAlpha(alpha);
-        mEdgePaint.setAlpha(alpha);
+        if (mBubblePaint.getAlpha() != alpha || mEdgePaint.getAlpha() != alpha) {
+            mBubblePaint.setAlpha(alpha);
+            mEdgePaint.setAlpha(alpha);
+            mRecordingDirty = true;
+        }
     }
 
     @Override
@@ -378,6 +415,7 @@ public class BubbleDrawable extends Drawable {
 
         mBubblePaint.setColorFilter(cf);
         mEdgePaint.setColorFilter(cf);
+        mRecordingDirty = true;
     }
 
     @Override
@@ -407,11 +445,42 @@ public class BubbleDrawable extends Drawable {
             return;
         }
 
+        // hardware canvases replay pictures since marshmallow
+        if (mRecordingEnabled && (Build.VERSION.SDK_INT >= 23 || !canvas.isHardwareAccelerated())) {
+            if (mRecording == null || mRecordingDirty) {
+                record();
+            }
+            if (mRecording != null) {
+                canvas.drawPicture(mRecording);
+                return;
+            }
+        }
+
+        drawBubble(canvas);
+    }
+    //endregion
+
+    private void record () {
+        Rect bounds = getBounds();
+        if (bounds.right <= 0 || bounds.bottom <= 0) {
+            mRecording = null;
+            return;
+        }
+
+        if (mRecording == null) {
+            mRecording = new Picture();
+        }
+        // the path is in bounds coordinates, so the picture starts at the origin of the canvas
+        drawBubble(mRecording.beginRecording(bounds.right, bounds.bottom));
+        mRecording.endRecording();
+        mRecordingDirty = false;
+    }
+
+    private void drawBubble ( @Nonnull Canvas canvas ) {
         canvas.drawPath(mBubblePath, mBubblePaint);
 
         if (mEdgePaint != null && mEdgePaint.getStrokeWidth() > 0f) {
             canvas.drawPath(mBubblePath, mEdgePaint);
         }
     }
-    //endregion
 }
@@ -0,0 +1,133 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.view.Gravity;
+
+import javax.annotation.Nonnull;
+
+/**
+ * calculates the outline of a bubble: the body rect without stroke and funnel, and the three funnel points.
+ * <p>
+ * {@link BubbleDrawable} turns the result into a path. The math itself does not touch any android graphics
+ * class, so it can be measured on a plain JVM.
+ */
+final class BubbleGeometry {
+
+    int left;
+    int top;
+    int right;
+    int bottom;
+
+    int funnelGravity;
+    // base start, tip and base end of the funnel as x, y pairs
+    @Nonnull
+    final float[] funnel = new float[6];
+
+    /**
+     * calculates the outline for the given shape.
+     *
+     * @param shape bounds, corner, edge and funnel of the bubble
+     */
+    void calc ( @Nonnull BubbleShapeCache.ShapeKey shape ) {
+        left = shape.left;
+        top = shape.top;
+        right = shape.right;
+        bottom = shape.bottom;
+        funnelGravity = shape.funnelGravity;
+
+        int strokeHalfSize = (int) (shape.edgeThickness / 2f);
+        left += strokeHalfSize;
+        top += strokeHalfSize;
+        right -= strokeHalfSize;
+        bottom -= strokeHalfSize;
+
+        float vectorX = shape.funnelVectorX;
+        float vectorY = shape.funnelVectorY;
+        switch (funnelGravity) {
+            case Gravity.LEFT:
+                left += Math.abs(vectorX);
+                break;
+            case Gravity.RIGHT:
+                right -= Math.abs(vectorX);
+                break;
+            case Gravity.TOP:
+                top += Math.abs(vectorY);
+                break;
+            case Gravity.BOTTOM:
+                bottom -= Math.abs(vectorY);
+                break;
+            default:
+                break;
+        }
+
+        float halfFunnelSize = shape.funnelWidth / 2f;
+        int corner = shape.corner;
+        float start = shape.funnelStart;
+        float x;
+        float y;
+
+        switch (funnelGravity) {
+            case Gravity.LEFT:
+                x = left;
+                y = ((bottom - (corner * 2)) * start) + halfFunnelSize + corner;
+                setFunnelPoint(0, x, y);
+
+                x -= Math.abs(vectorX);
+                y += vectorY - halfFunnelSize;
+                setFunnelPoint(1, x, y);
+
+                x = left;
+                y = y - vectorY - halfFunnelSize;
+                setFunnelPoint(2, x, y);
+                break;
+
+            case Gravity.RIGHT:
+                x = right;
+                y = ((bottom - (corner * 2)) * start) - halfFunnelSize + corner;
+                setFunnelPoint(0, x, y);
+
+                x += Math.abs(vectorX);
+                y += vectorY + halfFunnelSize;
+                setFunnelPoint(1, x, y);
+
+                x = right;
+                y = y - vectorY + halfFunnelSize;
+                setFunnelPoint(2, x, y);
+                break;
+
+            case Gravity.TOP:
+                x = ((right - (corner * 2)) * start) - halfFunnelSize + corner;
+                y = top;
+                setFunnelPoint(0, x, y);
+
+                x += vectorX + halfFunnelSize;
+                y -= Math.abs(vectorY);
+                setFunnelPoint(1, x, y);
+
+                x = x - vectorX + halfFunnelSize;
+                y = top;
+                setFunnelPoint(2, x, y);
+                break;
+
+            case Gravity.BOTTOM:
+                x = ((right - (corner * 2)) * start) + halfFunnelSize + corner;
+                y = bottom;
+                setFunnelPoint(0, x, y);
+
+                x += vectorX - halfFunnelSize;
+                y += Math.abs(vectorY);
+                setFunnelPoint(1, x, y);
+
+                x = x - vectorX - halfFunnelSize;
+                y = bottom;
+                setFunnelPoint(2, x, y);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void setFunnelPoint ( int index, float x, float y ) {
+        funnel[index * 2] = x;
+        funnel[index * 2 + 1] = y;
+    }
+}
@@ -0,0 +1,172 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.graphics.Path;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * process wide LRU cache of bubble outlines used by {@link BubbleDrawable}.
+ * bubbles with the same bounds, corner, edge and funnel configuration share one {@link Path}.
+ * cached paths are never modified after they have been built, so they can be drawn by any number of drawables.
+ */
+public final class BubbleShapeCache {
+
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    private static final LinkedHashMap<ShapeKey, Path> sShapes = new LinkedHashMap<>(16, 0.75f, true);
+    private static int sMaxSize = DEFAULT_MAX_SIZE;
+
+    private static int sHitCount;
+    private static int sMissCount;
+    private static int sEvictionCount;
+
+    private BubbleShapeCache () {
+    }
+
+    @CheckForNull
+    static synchronized Path get ( @Nonnull ShapeKey key ) {
+        Path path = sShapes.get(key);
+        if (path != null) {
+            sHitCount++;
+        } else {
+            sMissCount++;
+        }
+        return path;
+    }
+
+    static synchronized void put ( @Nonnull ShapeKey key, @Nonnull Path path ) {
+        if (sMaxSize <= 0) {
+            return;
+        }
+        sShapes.put(key.copy(), path);
+        trimToSize(sMaxSize);
+    }
+
+    private static void trimToSize ( int maxSize ) {
+        Iterator<Map.Entry<ShapeKey, Path>> it = sShapes.entrySet().iterator();
+        while (sShapes.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            sEvictionCount++;
+        }
+    }
+
+    //region public methods
+
+    /**
+     * sets the maximum number of cached bubble shapes. shrinking the cache evicts the least recently used shapes.
+     *
+     * @param maxSize maximum number of shapes, {@code 0} disables caching
+     */
+    public static synchronized void setMaxSize ( int maxSize ) {
+        sMaxSize = Math.max(0, maxSize);
+        trimToSize(sMaxSize);
+    }
+
+    public static synchronized int getMaxSize () {
+        return sMaxSize;
+    }
+
+    public static synchronized int getSize () {
+        return sShapes.size();
+    }
+
+    public static synchronized int getHitCount () {
+        return sHitCount;
+    }
+
+    public static synchronized int getMissCount () {
+        return sMissCount;
+    }
+
+    public static synchronized int getEvictionCount () {
+        return sEvictionCount;
+    }
+
+    /**
+     * removes all cached shapes and resets the statistics.
+     */
+    public static synchronized void clear () {
+        sShapes.clear();
+        sHitCount = 0;
+        sMissCount = 0;
+        sEvictionCount = 0;
+    }
+    //endregion
+
+    /**
+     * all parameters that define the outline of a bubble.
+     */
+    static final class ShapeKey {
+        int left;
+        int top;
+        int right;
+        int bottom;
+        float edgeThickness;
+        int corner;
+        int funnelGravity;
+        int funnelWidth;
+        float funnelStart;
+        float funnelVectorX;
+        float funnelVectorY;
+
+        ShapeKey copy () {
+            ShapeKey key = new ShapeKey();
+            key.left = left;
+            key.top = top;
+            key.right = right;
+            key.bottom = bottom;
+            key.edgeThickness = edgeThickness;
+            key.corner = corner;
+            key.funnelGravity = funnelGravity;
+            key.funnelWidth = funnelWidth;
+            key.funnelStart = funnelStart;
+            key.funnelVectorX = funnelVectorX;
+            key.funnelVectorY = funnelVectorY;
+            return key;
+        }
+
+        @Override
+        public boolean equals ( Object o ) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ShapeKey)) {
+                return false;
+            }
+            ShapeKey other = (ShapeKey) o;
+            return left == other.left
+                    && top == other.top
+                    && right == other.right
+                    && bottom == other.bottom
+                    && Float.compare(edgeThickness, other.edgeThickness) == 0
+                    && corner == other.corner
+                    && funnelGravity == other.funnelGravity
+                    && funnelWidth == other.funnelWidth
+                    && Float.compare(funnelStart, other.funnelStart) == 0
+                    && Float.compare(funnelVectorX, other.funnelVectorX) == 0
+                    && Float.compare(funnelVectorY, other.funnelVectorY) == 0;
+        }
+
+        @Override
+        public int hashCode () {
+            int result = left;
+            result = 31 * result + top;
+            result = 31 * result + right;
+            result = 31 * result + bottom;
+            result = 31 * result + Float.floatToIntBits(edgeThickness);
+            result = 31 * result + corner;
+            result = 31 * result + funnelGravity;
+            result = 31 * result + funnelWidth;
+            result = 31 * result + Float.floatToIntBits(funnelStart);
+            result = 31 * result + Float.floatToIntBits(funnelVectorX);
+            result = 31 * result + Float.floatToIntBits(funnelVectorY);
+            return result;
+        }
+    }
+}
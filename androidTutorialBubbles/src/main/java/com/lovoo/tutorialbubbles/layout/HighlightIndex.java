@@ -0,0 +1,169 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import javax.annotation.Nonnull;
+
+/**
+ * uniform grid over the bounds of all highlight rects, used to find the highlights under a touch point
+ * without testing every highlight.
+ * <p>
+ * rects are passed as packed int arrays ({@code left, top, right, bottom} per highlight) and all cell lists are
+ * stored in flat int arrays, which are reused between rebuilds.
+ */
+final class HighlightIndex {
+
+    private static final int MAX_CELLS_PER_AXIS = 64;
+
+    @Nonnull
+    private int[] mRects = new int[0];
+    private int mCount;
+
+    private int mMinX;
+    private int mMinY;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mColumns;
+    private int mRows;
+
+    // cell i contains the highlight indices mCellItems[mCellStart[i]] until mCellItems[mCellStart[i + 1]] (exclusive)
+    @Nonnull
+    private int[] mCellStart = new int[1];
+    @Nonnull
+    private int[] mCellItems = new int[0];
+
+    /**
+     * rebuilds the grid.
+     *
+     * @param rects packed rects, four ints per highlight
+     * @param count number of highlights
+     */
+    void build ( @Nonnull int[] rects, int count ) {
+        mCount = 0;
+        if (count <= 0) {
+            return;
+        }
+
+        if (mRects.length < count * 4) {
+            mRects = new int[count * 4];
+        }
+        System.arraycopy(rects, 0, mRects, 0, count * 4);
+        mCount = count;
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            minX = Math.min(minX, mRects[o]);
+            minY = Math.min(minY, mRects[o + 1]);
+            maxX = Math.max(maxX, mRects[o + 2]);
+            maxY = Math.max(maxY, mRects[o + 3]);
+        }
+
+        mMinX = minX;
+        mMinY = minY;
+
+        // roughly one highlight per cell
+        int cellsPerAxis = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.ceil(Math.sqrt(count))));
+        int width = Math.max(1, maxX - minX);
+        int height = Math.max(1, maxY - minY);
+        mCellWidth = Math.max(1, (width + cellsPerAxis - 1) / cellsPerAxis);
+        mCellHeight = Math.max(1, (height + cellsPerAxis - 1) / cellsPerAxis);
+        mColumns = (width + mCellWidth - 1) / mCellWidth;
+        mRows = (height + mCellHeight - 1) / mCellHeight;
+
+        int cellCount = mColumns * mRows;
+        if (mCellStart.length < cellCount + 1) {
+            mCellStart = new int[cellCount + 1];
+        }
+        for (int i = 0; i <= cellCount; i++) {
+            mCellStart[i] = 0;
+        }
+
+        // 1. count highlights per cell
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            if (isEmpty(o)) {
+                continue;
+            }
+            for (int row = rowOf(mRects[o + 1]); row <= rowOf(mRects[o + 3] - 1); row++) {
+                for (int column = columnOf(mRects[o]); column <= columnOf(mRects[o + 2] - 1); column++) {
+                    mCellStart[row * mColumns + column + 1]++;
+                    total++;
+                }
+            }
+        }
+        for (int i = 0; i < cellCount; i++) {
+            mCellStart[i + 1] += mCellStart[i];
+        }
+
+        // 2. fill cells, highlight indices stay in ascending order within each cell
+        if (mCellItems.length < total) {
+            mCellItems = new int[total];
+        }
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            if (isEmpty(o)) {
+                continue;
+            }
+            for (int row = rowOf(mRects[o + 1]); row <= rowOf(mRects[o + 3] - 1); row++) {
+                for (int column = columnOf(mRects[o]); column <= columnOf(mRects[o + 2] - 1); column++) {
+                    // mCellStart[cell] is used as write position and restored below
+                    mCellItems[mCellStart[row * mColumns + column]++] = i;
+                }
+            }
+        }
+        for (int i = cellCount; i > 0; i--) {
+            mCellStart[i] = mCellStart[i - 1];
+        }
+        mCellStart[0] = 0;
+    }
+
+    /**
+     * finds all highlights that contain the given point.
+     *
+     * @param x   x coordinate
+     * @param y   y coordinate
+     * @param out receives the indices of the hit highlights in ascending order, must hold at least as many
+     *            entries as highlights were indexed
+     * @return number of hits written to {@code out}
+     */
+    int query ( int x, int y, @Nonnull int[] out ) {
+        if (mCount == 0 || x < mMinX || y < mMinY) {
+            return 0;
+        }
+        int column = (x - mMinX) / mCellWidth;
+        int row = (y - mMinY) / mCellHeight;
+        if (column >= mColumns || row >= mRows) {
+            return 0;
+        }
+
+        int cell = row * mColumns + column;
+        int hits = 0;
+        for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+            int index = mCellItems[i];
+            int o = index * 4;
+            if (x >= mRects[o] && x < mRects[o + 2] && y >= mRects[o + 1] && y < mRects[o + 3]) {
+                out[hits++] = index;
+            }
+        }
+        return hits;
+    }
+
+    int size () {
+        return mCount;
+    }
+
+    private boolean isEmpty ( int offset ) {
+        return mRects[offset] >= mRects[offset + 2] || mRects[offset + 1] >= mRects[offset + 3];
+    }
+
+    private int columnOf ( int x ) {
+        return Math.min(mColumns - 1, Math.max(0, (x - mMinX) / mCellWidth));
+    }
+
+    private int rowOf ( int y ) {
+        return Math.min(mRows - 1, Math.max(0, (y - mMinY) / mCellHeight));
+    }
+}
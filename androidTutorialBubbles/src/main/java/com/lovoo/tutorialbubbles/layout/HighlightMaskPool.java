@@ -0,0 +1,182 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import com.lovoo.tutorialbubbles.TutorialMetricsListener;
+
+import java.util.ArrayList;
+
+import javax.annotation.Nonnull;
+
+/**
+ * process wide pool of highlight mask bitmaps.
+ * <p>
+ * masks are handed back by {@link TutorialScreenContainerLayout} when a tutorial is dismissed and reused by the
+ * next tutorial that needs a mask of the same size and config. On KITKAT and above a larger pooled bitmap is
+ * reconfigured in place, like {@code inBitmap} does for decoding. The pool is bounded in bytes, bitmaps that
+ * do not fit anymore are recycled.
+ */
+public final class HighlightMaskPool {
+
+    public static final int DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    // least recently released bitmaps come first
+    private static final ArrayList<Bitmap> sBitmaps = new ArrayList<>();
+    private static int sMaxSizeBytes = DEFAULT_MAX_SIZE_BYTES;
+    private static int sSizeBytes;
+
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private HighlightMaskPool () {
+    }
+
+    /**
+     * returns a cleared bitmap with the given size and config, either from the pool or newly allocated.
+     *
+     * @param width   width in px
+     * @param height  height in px
+     * @param config  bitmap config
+     * @param metrics receives the size of a newly allocated bitmap
+     * @return a mutable, transparent bitmap
+     */
+    @Nonnull
+    static synchronized Bitmap obtain ( int width, int height, @Nonnull Bitmap.Config config,
+                                        @Nonnull TutorialMetricsListener metrics ) {
+        Bitmap bitmap = takeExactMatch(width, height, config);
+        if (bitmap == null && Build.VERSION.SDK_INT >= 19) {
+            bitmap = takeReconfigurable(width, height, config);
+        }
+
+        if (bitmap == null) {
+            sMissCount++;
+            Bitmap allocated = Bitmap.createBitmap(width, height, config);
+            metrics.onHighlightMaskAllocated(getSizeInBytes(allocated));
+            return allocated;
+        }
+
+        sHitCount++;
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * hands a bitmap back to the pool. the caller must not use the bitmap afterwards.
+     *
+     * @param bitmap the released bitmap
+     */
+    static synchronized void release ( @Nonnull Bitmap bitmap ) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || sBitmaps.contains(bitmap)) {
+            return;
+        }
+
+        int size = getSizeInBytes(bitmap);
+        if (size > sMaxSizeBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        sBitmaps.add(bitmap);
+        sSizeBytes += size;
+        trimToSize(sMaxSizeBytes);
+    }
+
+    private static Bitmap takeExactMatch ( int width, int height, @Nonnull Bitmap.Config config ) {
+        for (int i = sBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sBitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                return take(i);
+            }
+        }
+        return null;
+    }
+
+    @TargetApi(19)
+    private static Bitmap takeReconfigurable ( int width, int height, @Nonnull Bitmap.Config config ) {
+        int requiredBytes = width * height * getBytesPerPixel(config);
+        for (int i = sBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sBitmaps.get(i);
+            if (bitmap.getAllocationByteCount() >= requiredBytes) {
+                take(i);
+                bitmap.reconfigure(width, height, config);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private static Bitmap take ( int index ) {
+        Bitmap bitmap = sBitmaps.remove(index);
+        sSizeBytes -= getSizeInBytes(bitmap);
+        return bitmap;
+    }
+
+    private static void trimToSize ( int maxSizeBytes ) {
+        while (sSizeBytes > maxSizeBytes && !sBitmaps.isEmpty()) {
+            take(0).recycle();
+        }
+    }
+
+    private static int getSizeInBytes ( @Nonnull Bitmap bitmap ) {
+        if (Build.VERSION.SDK_INT >= 19) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int getBytesPerPixel ( @Nonnull Bitmap.Config config ) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    //region public methods
+
+    /**
+     * sets the maximum number of bytes the pooled bitmaps may occupy. shrinking the pool recycles
+     * the least recently released bitmaps.
+     *
+     * @param maxSizeBytes maximum size in bytes, {@code 0} disables pooling
+     */
+    public static synchronized void setMaxSizeBytes ( int maxSizeBytes ) {
+        sMaxSizeBytes = Math.max(0, maxSizeBytes);
+        trimToSize(sMaxSizeBytes);
+    }
+
+    public static synchronized int getMaxSizeBytes () {
+        return sMaxSizeBytes;
+    }
+
+    public static synchronized int getSizeBytes () {
+        return sSizeBytes;
+    }
+
+    public static synchronized int getBitmapCount () {
+        return sBitmaps.size();
+    }
+
+    public static synchronized int getHitCount () {
+        return sHitCount;
+    }
+
+    public static synchronized int getMissCount () {
+        return sMissCount;
+    }
+
+    /**
+     * recycles all pooled bitmaps.
+     */
+    public static synchronized void clear () {
+        trimToSize(0);
+    }
+    //endregion
+}
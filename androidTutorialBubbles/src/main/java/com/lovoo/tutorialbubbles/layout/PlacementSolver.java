@@ -0,0 +1,386 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.view.Gravity;
+
+import javax.annotation.Nonnull;
+
+/**
+ * calculates where a tutorial bubble is placed around its anchor.
+ * <p>
+ * the four candidate boxes (left, top, right and bottom of the anchor) are kept in preallocated
+ * int arrays and the best box is picked in a single pass, so a measure pass does not allocate.
+ * containers with several bubbles place them one after another and pass the already placed bubbles
+ * as obstacles.
+ */
+final class PlacementSolver {
+
+    static final int BOX_COUNT = 4;
+    static final int NO_BOX = -1;
+
+    private static final int[] GRAVITIES = {Gravity.LEFT, Gravity.TOP, Gravity.RIGHT, Gravity.BOTTOM};
+
+    private final int[] mBoxLeft = new int[BOX_COUNT];
+    private final int[] mBoxTop = new int[BOX_COUNT];
+    private final int[] mBoxRight = new int[BOX_COUNT];
+    private final int[] mBoxBottom = new int[BOX_COUNT];
+
+    private boolean mHasBoxes;
+
+    private int mAnchorLeft;
+    private int mAnchorTop;
+    private int mAnchorRight;
+    private int mAnchorBottom;
+
+    private int mHalfWidth;
+    private int mHalfHeight;
+
+    private int mChildLeft;
+    private int mChildTop;
+
+    /**
+     * calculates the displayable boxes around the given anchor bounds.
+     *
+     * @param anchorLeft   left bound of the anchor
+     * @param anchorTop    top bound of the anchor
+     * @param anchorRight  right bound of the anchor
+     * @param anchorBottom bottom bound of the anchor
+     * @param paddingLeft   left padding of the container
+     * @param paddingTop    top padding of the container
+     * @param paddingRight  right padding of the container
+     * @param paddingBottom bottom padding of the container
+     * @param width         width of the tutorial screen
+     * @param height        height of the tutorial screen
+     * @param offset        offset between anchor and bubble in px
+     */
+    void calcBoxes ( int anchorLeft, int anchorTop, int anchorRight, int anchorBottom,
+                     int paddingLeft, int paddingTop, int paddingRight, int paddingBottom,
+                     int width, int height, int offset ) {
+        mAnchorLeft = anchorLeft;
+        mAnchorTop = anchorTop;
+        mAnchorRight = anchorRight;
+        mAnchorBottom = anchorBottom;
+        mHalfWidth = width / 2;
+        mHalfHeight = height / 2;
+
+        // left
+        setBox(0, paddingLeft, paddingTop, anchorLeft - offset, height - paddingBottom);
+        // top
+        setBox(1, paddingLeft, paddingTop, width - paddingRight, anchorTop - offset);
+        // right
+        setBox(2, anchorRight + offset, paddingTop, width - paddingRight, height - paddingBottom);
+        // bottom
+        setBox(3, paddingLeft, anchorBottom + offset, width - paddingRight, height - paddingBottom);
+
+        mHasBoxes = true;
+    }
+
+    private void setBox ( int index, int left, int top, int right, int bottom ) {
+        mBoxLeft[index] = left;
+        mBoxTop[index] = top;
+        mBoxRight[index] = right;
+        mBoxBottom[index] = bottom;
+    }
+
+    /**
+     * picks the box in which a child of the given size fits best. the lowest sum of width and height ratio wins,
+     * ties are resolved in favour of the larger box.
+     *
+     * @param childWidth  measured width of the child
+     * @param childHeight measured height of the child
+     * @return index of the best box or {@link #NO_BOX}
+     */
+    int findBestBox ( int childWidth, int childHeight ) {
+        if (!mHasBoxes) {
+            return NO_BOX;
+        }
+
+        int bestIndex = NO_BOX;
+        int bestArea = 0;
+        float bestValue = Float.MAX_VALUE;
+
+        for (int i = 0; i < BOX_COUNT; i++) {
+            float value = calcScore(i, childWidth, childHeight);
+            int area = getBoxWidth(i) * getBoxHeight(i);
+
+            if (value < bestValue || (value == bestValue && bestIndex != NO_BOX && area > bestArea)) {
+                bestValue = value;
+                bestArea = area;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * same as {@link #findBestBox(int, int)}, but keeps the box of the current gravity as long as the child
+     * fits into it and the best box does not score better by more than the given margin. this keeps bubbles
+     * near the screen midlines from flipping sides on every small anchor movement.
+     *
+     * @param childWidth     measured width of the child
+     * @param childHeight    measured height of the child
+     * @param currentGravity gravity of the current placement or {@link Gravity#NO_GRAVITY}
+     * @param margin         relative score advantage another box needs, e.g. {@code 0.15} for 15%
+     * @return index of the chosen box or {@link #NO_BOX}
+     */
+    int findBestBox ( int childWidth, int childHeight, int currentGravity, float margin ) {
+        int bestIndex = findBestBox(childWidth, childHeight);
+        if (bestIndex == NO_BOX || margin <= 0f || GRAVITIES[bestIndex] == currentGravity) {
+            return bestIndex;
+        }
+
+        int currentIndex = NO_BOX;
+        for (int i = 0; i < BOX_COUNT; i++) {
+            if (GRAVITIES[i] == currentGravity) {
+                currentIndex = i;
+                break;
+            }
+        }
+        if (currentIndex == NO_BOX || childWidth > getBoxWidth(currentIndex) || childHeight > getBoxHeight(currentIndex)) {
+            // no current placement or the child does not fit anymore
+            return bestIndex;
+        }
+
+        float currentValue = calcScore(currentIndex, childWidth, childHeight);
+        float bestValue = calcScore(bestIndex, childWidth, childHeight);
+        return currentValue <= bestValue * (1f + margin) ? currentIndex : bestIndex;
+    }
+
+    /**
+     * same as {@link #findBestBox(int, int, int, float)}, but avoids boxes in which the child would overlap one of
+     * the given obstacles, e.g. other bubbles and their anchors. the child is expected to shrink to the box like
+     * the container measures it. if the child overlaps an obstacle in every box, the preferred box is kept.
+     *
+     * @param childWidth     measured width of the child
+     * @param childHeight    measured height of the child
+     * @param currentGravity gravity of the current placement or {@link Gravity#NO_GRAVITY}
+     * @param margin         relative score advantage another box needs, e.g. {@code 0.15} for 15%
+     * @param obstacles      bounds of the obstacles as left, top, right, bottom
+     * @param obstacleCount  number of obstacles
+     * @return index of the chosen box or {@link #NO_BOX}
+     */
+    int findFreeBox ( int childWidth, int childHeight, int currentGravity, float margin,
+                      @Nonnull int[] obstacles, int obstacleCount ) {
+        int preferredIndex = findBestBox(childWidth, childHeight, currentGravity, margin);
+        if (preferredIndex == NO_BOX || obstacleCount == 0
+                || !overlapsObstacle(preferredIndex, childWidth, childHeight, obstacles, obstacleCount)) {
+            return preferredIndex;
+        }
+
+        int freeIndex = NO_BOX;
+        float freeValue = Float.MAX_VALUE;
+        for (int i = 0; i < BOX_COUNT; i++) {
+            if (i == preferredIndex || getBoxWidth(i) <= 0 || getBoxHeight(i) <= 0) {
+                continue;
+            }
+            float value = calcScore(i, childWidth, childHeight);
+            if (value < freeValue && !overlapsObstacle(i, childWidth, childHeight, obstacles, obstacleCount)) {
+                freeValue = value;
+                freeIndex = i;
+            }
+        }
+        return freeIndex != NO_BOX ? freeIndex : preferredIndex;
+    }
+
+    private boolean overlapsObstacle ( int index, int childWidth, int childHeight, @Nonnull int[] obstacles, int obstacleCount ) {
+        int width = Math.min(childWidth, getBoxWidth(index));
+        int height = Math.min(childHeight, getBoxHeight(index));
+        calcInnerBoxPosition(index, width, height);
+        int right = mChildLeft + width;
+        int bottom = mChildTop + height;
+
+        for (int i = 0; i < obstacleCount; i++) {
+            int offset = i * 4;
+            if (mChildLeft < obstacles[offset + 2] && obstacles[offset] < right
+                    && mChildTop < obstacles[offset + 3] && obstacles[offset + 1] < bottom) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float calcScore ( int index, int childWidth, int childHeight ) {
+        return Math.abs(childWidth / (float) getBoxWidth(index)) + Math.abs(childHeight / (float) getBoxHeight(index));
+    }
+
+    /**
+     * calculates the position of the child within the given box according to the anchor.
+     * the result can be read with {@link #getChildLeft()} and {@link #getChildTop()}.
+     *
+     * @param index       index of the box
+     * @param childWidth  measured width of the child
+     * @param childHeight measured height of the child
+     */
+    void calcInnerBoxPosition ( int index, int childWidth, int childHeight ) {
+        mChildLeft = mBoxLeft[index];
+        mChildTop = mBoxTop[index];
+
+        switch (GRAVITIES[index]) {
+            case Gravity.LEFT:
+                mChildTop = calcVerticalPosition(index, childHeight);
+                mChildLeft = mBoxRight[index] - childWidth;
+                break;
+            case Gravity.TOP:
+                mChildLeft = calcHorizontalPosition(index, childWidth);
+                mChildTop = mBoxBottom[index] - childHeight;
+                break;
+            case Gravity.RIGHT:
+                mChildTop = calcVerticalPosition(index, childHeight);
+                break;
+            case Gravity.BOTTOM:
+                mChildLeft = calcHorizontalPosition(index, childWidth);
+                break;
+            default:
+        }
+    }
+
+    private int calcVerticalPosition ( int index, int childHeight ) {
+        int top;
+        if (mAnchorBottom < mHalfHeight) {
+            // top
+            top = mBoxTop[index];
+            if (top + childHeight < mAnchorBottom) {
+                top = mAnchorBottom - childHeight;
+            }
+        } else if (mAnchorTop > mHalfHeight) {
+            // bottom
+            top = mBoxBottom[index] - childHeight;
+            if (top > mAnchorTop) {
+                top = mAnchorTop;
+            }
+        } else {
+            // center
+            top = mHalfHeight - childHeight / 2;
+        }
+        return top;
+    }
+
+    private int calcHorizontalPosition ( int index, int childWidth ) {
+        int left;
+        if (mAnchorRight < mHalfWidth) {
+            // left
+            left = mBoxLeft[index];
+            if (left + childWidth < mAnchorRight) {
+                left = mAnchorRight - childWidth;
+            }
+        } else if (mAnchorLeft > mHalfWidth) {
+            // right
+            left = mBoxRight[index] - childWidth;
+            if (left > mAnchorLeft) {
+                left = mAnchorLeft;
+            }
+        } else {
+            // center
+            left = mHalfWidth - childWidth / 2;
+        }
+        return left;
+    }
+
+    /**
+     * calculates the relative funnel position for a child that has been placed with {@link #calcInnerBoxPosition}.
+     *
+     * @param index        index of the box
+     * @param childWidth   measured width of the child
+     * @param childHeight  measured height of the child
+     * @param cornerRadius corner radius of the bubble
+     * @param funnelWidth  width of the funnel
+     * @return relative position between {@code [0, 1]}
+     */
+    float calcFunnelPosition ( int index, int childWidth, int childHeight, int cornerRadius, int funnelWidth ) {
+        return calcFunnelPosition(GRAVITIES[index], mAnchorLeft, mAnchorTop, mAnchorRight, mAnchorBottom,
+                mChildLeft, mChildTop, childWidth, childHeight, cornerRadius, funnelWidth);
+    }
+
+    /**
+     * calculates the relative funnel position for a child at the given position, e.g. after it followed
+     * a moving anchor.
+     *
+     * @param gravity      side of the anchor the child is placed at
+     * @param anchorLeft   left bound of the anchor
+     * @param anchorTop    top bound of the anchor
+     * @param anchorRight  right bound of the anchor
+     * @param anchorBottom bottom bound of the anchor
+     * @param childLeft    left position of the child
+     * @param childTop     top position of the child
+     * @param childWidth   measured width of the child
+     * @param childHeight  measured height of the child
+     * @param cornerRadius corner radius of the bubble
+     * @param funnelWidth  width of the funnel
+     * @return relative position between {@code [0, 1]}
+     */
+    static float calcFunnelPosition ( int gravity, int anchorLeft, int anchorTop, int anchorRight, int anchorBottom,
+                                      int childLeft, int childTop, int childWidth, int childHeight,
+                                      int cornerRadius, int funnelWidth ) {
+        float relativePos = 0.5f;
+
+        switch (gravity) {
+            case Gravity.TOP:
+            case Gravity.BOTTOM:
+                if (anchorRight - anchorLeft < childWidth) {
+                    float anchorCenterX = (anchorLeft + anchorRight) * 0.5f;
+                    relativePos = (anchorCenterX - childLeft) / (childWidth - cornerRadius);
+
+                    float funnelOverflow = (childWidth * relativePos) + (funnelWidth / 2);
+                    if (funnelOverflow > childWidth) {
+                        relativePos = relativePos - (funnelOverflow / childWidth - 1);
+                    }
+                }
+                break;
+            case Gravity.LEFT:
+            case Gravity.RIGHT:
+                if (anchorBottom - anchorTop < childHeight) {
+                    float anchorCenterY = (anchorTop + anchorBottom) * 0.5f;
+                    relativePos = (anchorCenterY - childTop) / (childHeight - cornerRadius);
+
+                    float funnelOverflow = (childHeight * relativePos) + (funnelWidth / 2);
+                    if (funnelOverflow > childHeight) {
+                        relativePos = relativePos - (funnelOverflow / childHeight - 1);
+                    }
+                }
+                break;
+            default:
+        }
+        return relativePos;
+    }
+
+    //region getter
+    boolean hasBoxes () {
+        return mHasBoxes;
+    }
+
+    int getGravity ( int index ) {
+        return GRAVITIES[index];
+    }
+
+    int getBoxLeft ( int index ) {
+        return mBoxLeft[index];
+    }
+
+    int getBoxTop ( int index ) {
+        return mBoxTop[index];
+    }
+
+    int getBoxRight ( int index ) {
+        return mBoxRight[index];
+    }
+
+    int getBoxBottom ( int index ) {
+        return mBoxBottom[index];
+    }
+
+    int getBoxWidth ( int index ) {
+        return mBoxRight[index] - mBoxLeft[index];
+    }
+
+    int getBoxHeight ( int index ) {
+        return mBoxBottom[index] - mBoxTop[index];
+    }
+
+    int getChildLeft () {
+        return mChildLeft;
+    }
+
+    int getChildTop () {
+        return mChildTop;
+    }
+    //endregion
+}
@@ -1,44 +1,47 @@
 package com.lovoo.tutorialbubbles.layout;
 
-import android.animation.LayoutTransition;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
+import android.graphics.Region;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.AttributeSet;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewPropertyAnimator;
+import android.view.ViewTreeObserver;
 
 import com.lovoo.tutorialbubbles.R;
+import com.lovoo.tutorialbubbles.TutorialMetrics;
+import com.lovoo.tutorialbubbles.TutorialMetricsListener;
 import com.lovoo.tutorialbubbles.TutorialScreen;
-import com.lovoo.tutorialbubbles.utils.Utils;
+import com.lovoo.tutorialbubbles.TutorialTimings;
+import com.lovoo.tutorialbubbles.utils.TutorialEnvironment;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /**
- * this ViewGroup serves as container layout for a tutorial layout and supplies this functionality.
+ * this ViewGroup serves as container layout for one or more tutorial layouts and supplies this functionality.
  * <ul>
- * <li>positioning tutorial layout within its container</li>
+ * <li>positioning tutorial layouts within its container, next to their anchors and without overlapping each other</li>
  * <li>dimming background</li>
  * <li>delegating touch events</li>
  * <li>shows highlight views by not dimming an area where an underlying view is</li>
@@ -50,22 +53,26 @@ public class TutorialScreenContainerLayout extends ViewGroup {
 
     private static final boolean DEBUG = false;
 
-    private static final int DEFAULT_FUNNEL_WIDTH = 25;
-    private static final int DEFAULT_FUNNEL_LENGTH = 20;
-    private static final int DEFAULT_BUBBLE_CORNER_RADIUS = 5;
-    private static final int DEFAULT_OFFSET_FROM_ANCHOR = 5;
+    private static final int DIM_ALPHA = 127;
+    private static final long ENTER_DURATION = 200;
+    private static final long EXIT_DURATION = 150;
+    private static final float ENTER_SCALE = 0.9f;
+    private static final float DEFAULT_PLACEMENT_HYSTERESIS = 0.15f;
 
-    @CheckForNull
-    private View mAnchor;
+    private static final int CONTAINER_FINGERPRINT_SIZE = 13;
+    private static final int BUBBLE_FINGERPRINT_SIZE = 4;
 
+    // tutorial layouts with their anchors, the first one is the primary tutorial
+    @Nonnull
+    private final ArrayList<BubbleEntry> mBubbles;
+    // bounds of anchors and placed bubbles a bubble must not overlap, as left, top, right, bottom
     @Nonnull
-    private Rect mAnchorBounds;
+    private int[] mObstaclesTmp;
 
-    private LinkedHashMap<Integer, DisplayBox> mDisplayAreas;
+    @Nonnull
+    private final PlacementSolver mPlacementSolver;
     private int mDesiredTutorialScreenWidth;
     private int mDesiredTutorialScreenHeight;
-    private int mHalfTutorialScreenWidth;
-    private int mHalfTutroialScreenHeight;
 
     private int mFunnelLength;
     private int mFunnelWidth;
@@ -75,7 +82,6 @@ public class TutorialScreenContainerLayout extends ViewGroup {
     private Paint mClearPaint;
 
     private int mOffestFromAnchor;
-    private int[] mInitialTutorialPadding;
     private int mTutorialBackgroundColor;
     private int mBubbleCornerRadius;
 
@@ -87,10 +93,98 @@ public class TutorialScreenContainerLayout extends ViewGroup {
 
     @Nonnull
     private ArrayList<HighlightEntry> mHightlightViews;
-    private ChildPos mChildPos;
 
-    private OnAttachStateChangeListener mAnchorDetachListener;
-    private boolean mAnchorIsDetached;
+    @Nonnull
+    private final Rect mHighlightBoundsTmp;
+    @Nonnull
+    private final Rect mDamage;
+    // union of everything invalidated since the last onDraw, an empty rect means the whole view
+    @Nonnull
+    private final Rect mFrameDamage;
+    @Nonnull
+    private final Rect mDrawClipTmp;
+    private long mLastFrameRedrawnPixels;
+
+    @Nonnull
+    private final HighlightIndex mHighlightIndex;
+    private boolean mHighlightIndexDirty;
+    @Nonnull
+    private int[] mHighlightRectsTmp;
+    @Nonnull
+    private int[] mHighlightHitsTmp;
+    @CheckForNull
+    private ViewTreeObserver mHighlightTreeObserver;
+    @Nonnull
+    private final ViewTreeObserver.OnPreDrawListener mHighlightTracker = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw () {
+            updateHighlightBounds();
+            return true;
+        }
+    };
+
+    @Nonnull
+    private int[] mMeasureFingerprint;
+    @Nonnull
+    private int[] mLastMeasureFingerprint;
+    private int mSkippedMeasurePasses;
+    // System.nanoTime() of the last show request, 0 once the bubble is fully shown
+    private long mShowRequestedNanos;
+
+    private float mPlacementHysteresis = DEFAULT_PLACEMENT_HYSTERESIS;
+    private boolean mRecordBubbles;
+    private int mGravityChanges;
+    @Nonnull
+    private TutorialMetricsListener mMetrics = TutorialMetrics.forListener(null);
+
+    @Nonnull
+    private final ColorDrawable mDimDrawable;
+    @Nonnull
+    private final Paint mDimPaint;
+    @Nonnull
+    private final Region mDimRegion;
+    @Nonnull
+    private final Path mDimPath;
+    private boolean mDimPathDirty;
+    private boolean mLayerFreeDimming;
+
+    private boolean mIsAttached;
+    private boolean mAnimated = true;
+    // true until the enter animation of the primary bubble ended, the show latency is recorded then
+    private boolean mEnterAnimating;
+    @Nonnull
+    private final Runnable mEnterEndAction = new Runnable() {
+        @Override
+        public void run () {
+            mEnterAnimating = false;
+            recordShowLatency(System.nanoTime());
+        }
+    };
+    // end action of a running exit animation, run exactly once unless the tutorial is shown again
+    @CheckForNull
+    private Runnable mPendingExitAction;
+    @Nonnull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @Nonnull
+    private final Runnable mPendingExitRunner = new Runnable() {
+        @Override
+        public void run () {
+            runPendingExitAction();
+        }
+    };
+
+    private boolean mFollowAnchor;
+    // one observer per window the anchors are in
+    @Nonnull
+    private final ArrayList<ViewTreeObserver> mAnchorTreeObservers = new ArrayList<>();
+    private int mAnchorFollowUpdates;
+    private final ViewTreeObserver.OnPreDrawListener mAnchorTracker = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw () {
+            followAnchor();
+            return true;
+        }
+    };
 
     public TutorialScreenContainerLayout ( Context context ) {
         this(context, null);
@@ -102,33 +196,39 @@ public class TutorialScreenContainerLayout extends ViewGroup {
 
     public TutorialScreenContainerLayout ( Context context, AttributeSet attrs, int defStyleAttr ) {
         super(context, attrs, defStyleAttr);
-        ColorDrawable colorDrawable = new ColorDrawable(getResources().getColor(android.R.color.black));
-        colorDrawable.setAlpha(127);
-        if (Build.VERSION.SDK_INT > 15) {
-            setBackground(colorDrawable);
-        } else {
-            setBackgroundDrawable(colorDrawable);
-        }
+        mDimDrawable = new ColorDrawable(getResources().getColor(android.R.color.black));
+        mDimDrawable.setAlpha(DIM_ALPHA);
+        setDimBackground(mDimDrawable);
 
-        mStatusbarHeight = Utils.getSystemStatusBarHeight(context);
-        mDisplayWidth = Utils.getDisplayWidth(context);
-        mDisplayHeight = Utils.getDisplayHeight(context);
-        mIsWindowTranslucent = Utils.isWindowTranslucent(context);
+        mDimPaint = new Paint();
+        mDimPaint.setStyle(Paint.Style.FILL);
+        mDimPaint.setColor(getResources().getColor(android.R.color.black));
+        mDimPaint.setAlpha(DIM_ALPHA);
+        mDimRegion = new Region();
+        mDimPath = new Path();
 
-        mDisplayAreas = new LinkedHashMap<>();
-        mAnchorBounds = new Rect();
+        applyEnvironment(TutorialEnvironment.get(context));
 
-        mFunnelLength = Utils.dpToPx(context, DEFAULT_FUNNEL_LENGTH);
-        mFunnelWidth = Utils.dpToPx(context, DEFAULT_FUNNEL_WIDTH);
-        mTutorialBackgroundColor = getResources().getColor(R.color.tooltip_background);
-        mBubbleCornerRadius = Utils.dpToPx(context, DEFAULT_BUBBLE_CORNER_RADIUS);
-        mOffestFromAnchor = Utils.dpToPx(context, DEFAULT_OFFSET_FROM_ANCHOR);
+        mPlacementSolver = new PlacementSolver();
+        mBubbles = new ArrayList<>();
+        mObstaclesTmp = new int[0];
+        mMeasureFingerprint = new int[CONTAINER_FINGERPRINT_SIZE];
+        mLastMeasureFingerprint = new int[CONTAINER_FINGERPRINT_SIZE];
+
+        resetTutorialStyle();
 
         mClearPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mClearPaint.setStyle(Paint.Style.FILL);
         mClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
 
         mHightlightViews = new ArrayList<>();
+        mHighlightBoundsTmp = new Rect();
+        mDamage = new Rect();
+        mFrameDamage = new Rect();
+        mDrawClipTmp = new Rect();
+        mHighlightIndex = new HighlightIndex();
+        mHighlightRectsTmp = new int[0];
+        mHighlightHitsTmp = new int[0];
 
         if (DEBUG) {
             mDebugPaints = new HashMap<>();
@@ -157,9 +257,6 @@ public class TutorialScreenContainerLayout extends ViewGroup {
             mAnchourDebugPaint.setStyle(Paint.Style.FILL);
             mAnchourDebugPaint.setColor(getResources().getColor(R.color.notification_bubble_female));
         }
-
-        setLayoutTransition(new LayoutTransition());
-
     }
 
     /**
@@ -169,51 +266,140 @@ public class TutorialScreenContainerLayout extends ViewGroup {
      * @param anchor   a anchor view
      */
     public void init ( View tutorial, View anchor, TutorialScreenDimension dimensions ) {
-        this.mAnchor = anchor;
+        this.mIsWindowManaged = dimensions.isWindowManaged;
+        setDesiredTutorialScreenSize(dimensions.width, dimensions.height);
 
-        calcDisplayableAreas();
+        addTutorial(tutorial, anchor);
+    }
 
-        mAnchorDetachListener = new OnAttachStateChangeListener() {
-            @Override
-            public void onViewAttachedToWindow ( View v ) {
-                mAnchorIsDetached = false;
-            }
+    private void setDesiredTutorialScreenSize ( int width, int height ) {
+        mDesiredTutorialScreenWidth = width;
+        if (mIsWindowTranslucent || !mIsWindowManaged) {
+            mDesiredTutorialScreenHeight = height;
+        } else {
+            mDesiredTutorialScreenHeight = height - mStatusbarHeight;
+        }
+    }
 
-            @Override
-            public void onViewDetachedFromWindow ( View v ) {
-                // joba: workaround if anchor is an optionsMenuItem
-                // in this case, every time onCreateOptionsMenu is called, a new view is inflated
-                // for that menu item, however we still have the old reference. For now we indicate with
-                // a flag that we lost the current ref in onDetach. In measurement pass we don't update
-                // the bounds as they should not have changed (except menu items change in runtime within the same fragment)
-                mAnchorIsDetached = true;
-//                mAnchor.removeOnAttachStateChangeListener(mAnchorDetachListener);
-            }
-        };
-        this.mAnchor.addOnAttachStateChangeListener(mAnchorDetachListener);
+    private void applyEnvironment ( @Nonnull TutorialEnvironment environment ) {
+        mStatusbarHeight = environment.statusBarHeight;
+        mDisplayWidth = environment.displayWidth;
+        mDisplayHeight = environment.displayHeight;
+        mIsWindowTranslucent = environment.isWindowTranslucent;
+    }
 
-        this.mIsWindowManaged = dimensions.isWindowManaged;
+    /**
+     * replaces all tutorial layouts and anchors by a single one, while this container stays attached.
+     * the tutorial style is kept, call {@link #resetTutorialStyle()} to fall back to the defaults.
+     *
+     * @param tutorial an inflated view that will replace the current tutorial
+     * @param anchor   the new anchor view
+     * @return the replaced primary tutorial, see {@link #removeTutorial()}
+     */
+    @CheckForNull
+    public View replaceTutorial ( View tutorial, View anchor ) {
+        View previous = removeTutorial();
+        addTutorial(tutorial, anchor);
+        requestLayout();
+        return previous;
+    }
 
-        mInitialTutorialPadding = new int[]{tutorial.getPaddingLeft(), tutorial.getPaddingTop(),
-                tutorial.getPaddingRight(), tutorial.getPaddingBottom()};
+    /**
+     * removes all tutorial layouts from this container. their initial padding is restored and the bubble backgrounds
+     * are removed, so the layouts can be added to another container.
+     *
+     * @return the removed primary tutorial, the one passed to {@link #init}, or null if there was none
+     */
+    @CheckForNull
+    public View removeTutorial () {
+        stopAnchorTracking();
 
+        View primary = mBubbles.isEmpty() ? null : mBubbles.get(0).tutorial;
+        for (BubbleEntry entry : mBubbles) {
+            entry.anchor.removeOnAttachStateChangeListener(entry);
 
-        mDesiredTutorialScreenWidth = dimensions.width;
-        if (mIsWindowTranslucent || !dimensions.isWindowManaged) {
-            mDesiredTutorialScreenHeight = dimensions.height;
-        } else {
-            mDesiredTutorialScreenHeight = dimensions.height - mStatusbarHeight;
+            // the bubble drawable belongs to the removed tutorial
+            View tutorial = entry.tutorial;
+            tutorial.setPadding(entry.initialPadding[0], entry.initialPadding[1],
+                    entry.initialPadding[2], entry.initialPadding[3]);
+            if (Build.VERSION.SDK_INT < 16) {
+                tutorial.setBackgroundDrawable(null);
+            } else {
+                tutorial.setBackground(null);
+            }
         }
+        mBubbles.clear();
+        removeAllViews();
+        resizeMeasureFingerprints();
+        return primary;
+    }
 
-        mHalfTutorialScreenWidth = mDesiredTutorialScreenWidth / 2;
-        mHalfTutroialScreenHeight = mDesiredTutorialScreenHeight / 2;
-
+    /**
+     * adds another tutorial layout with its own anchor. all tutorials of this container are placed in one
+     * measure pass, so they overlap neither each other nor each others anchors, and share one dim layer.
+     * earlier added tutorials are placed first and get the better sides of their anchors.
+     *
+     * @param tutorial an inflated view that will be added to the screen
+     * @param anchor   the anchor view of the tutorial
+     */
+    public void addTutorial ( @Nonnull View tutorial, @Nonnull View anchor ) {
+        BubbleEntry entry = new BubbleEntry(tutorial, anchor);
+        anchor.addOnAttachStateChangeListener(entry);
+        updateAnchorBounds(entry);
+        mBubbles.add(entry);
+        resizeMeasureFingerprints();
 
         tutorial.setClickable(true);
 
-
         addView(tutorial);
         tutorial.setVisibility(INVISIBLE);
+
+        if (mIsAttached) {
+            startAnchorTracking();
+        }
+    }
+
+    /**
+     * returns the number of tutorial layouts in this container.
+     *
+     * @return number of tutorials
+     */
+    public int getTutorialCount () {
+        return mBubbles.size();
+    }
+
+    private void resizeMeasureFingerprints () {
+        int size = CONTAINER_FINGERPRINT_SIZE + mBubbles.size() * BUBBLE_FINGERPRINT_SIZE;
+        if (mMeasureFingerprint.length != size) {
+            mMeasureFingerprint = new int[size];
+            mLastMeasureFingerprint = new int[size];
+        }
+    }
+
+    /**
+     * sets the listener that receives the cost counters of this container, see {@link TutorialMetrics}.
+     *
+     * @param metrics the listener
+     */
+    public void setMetricsListener ( @Nonnull TutorialMetricsListener metrics ) {
+        mMetrics = metrics;
+        for (BubbleEntry entry : mBubbles) {
+            if (entry.bubbleDrawable != null) {
+                entry.bubbleDrawable.setMetricsListener(metrics);
+            }
+        }
+    }
+
+    /**
+     * resets funnel, color, corner radius and anchor offset to their defaults.
+     */
+    public void resetTutorialStyle () {
+        TutorialEnvironment environment = TutorialEnvironment.get(getContext());
+        mFunnelLength = environment.funnelLength;
+        mFunnelWidth = environment.funnelWidth;
+        mTutorialBackgroundColor = getResources().getColor(R.color.tooltip_background);
+        mBubbleCornerRadius = environment.bubbleCornerRadius;
+        mOffestFromAnchor = environment.offsetFromAnchor;
     }
 
     /**
@@ -249,83 +435,756 @@ public class TutorialScreenContainerLayout extends ViewGroup {
      * @param hightlightViews collection of views
      */
     public void setHighlightViews ( @Nonnull ArrayList<TutorialScreen.HighlightView> hightlightViews ) {
-        boolean resetCache = false;
-        boolean resetBackground = false;
         View view;
         for (TutorialScreen.HighlightView e : hightlightViews) {
             view = e.mView;
             Rect rect = new Rect();
-            view.getGlobalVisibleRect(rect);
-            if (!mIsWindowTranslucent && mIsWindowManaged) {
-                rect.offset(0, -Utils.getSystemStatusBarHeight(getContext()));
+            calcHighlightBounds(view, rect);
+
+            HighlightEntry entry = new HighlightEntry(view, rect, null, e.mUseViewBoundsAsMask);
+            captureHighlightMask(entry);
+            mHightlightViews.add(entry);
+        }
+        mHighlightIndexDirty = true;
+        updateDimMode();
+
+        if (mIsAttached) {
+            startHighlightTracking();
+            invalidate();
+        }
+    }
+
+    /**
+     * removes all highlight views and hands their masks back to the {@link HighlightMaskPool}.
+     */
+    public void clearHighlightViews () {
+        stopHighlightTracking();
+        releaseHighlightMasks();
+        mHightlightViews.clear();
+        mHighlightIndexDirty = true;
+        updateDimMode();
+        invalidate();
+    }
+
+    /**
+     * returns whether the dim layer has to be drawn into an offscreen layer. this is only the case if a highlight
+     * uses a bitmap mask, which is cut out with a CLEAR xfermode. highlights masked by their bounds are left out
+     * of the dim path instead.
+     *
+     * @return true if a hardware layer is required, false otherwise
+     */
+    public boolean requiresDimLayer () {
+        for (HighlightEntry entry : mHightlightViews) {
+            if (!entry.useBoundsAsmask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateDimMode () {
+        mLayerFreeDimming = !requiresDimLayer();
+        mDimPathDirty = true;
+        if (mLayerFreeDimming) {
+            setDimBackground(null);
+            setWillNotDraw(false);
+        } else {
+            setDimBackground(mDimDrawable);
+        }
+    }
+
+    private void setDimBackground ( @Nullable ColorDrawable background ) {
+        if (Build.VERSION.SDK_INT > 15) {
+            setBackground(background);
+        } else {
+            setBackgroundDrawable(background);
+        }
+    }
+
+    private void buildDimPath () {
+        mDimRegion.set(0, 0, getWidth(), getHeight());
+        for (HighlightEntry entry : mHightlightViews) {
+            if (entry.rect != null) {
+                mDimRegion.op(entry.rect, Region.Op.DIFFERENCE);
+            }
+        }
+        mDimPath.rewind();
+        mDimRegion.getBoundaryPath(mDimPath);
+        mDimPathDirty = false;
+    }
+
+    @Override
+    protected void onSizeChanged ( int w, int h, int oldw, int oldh ) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mDimPathDirty = true;
+    }
+
+    private void calcHighlightBounds ( @Nonnull View view, @Nonnull Rect rect ) {
+        view.getGlobalVisibleRect(rect);
+        if (!mIsWindowTranslucent && mIsWindowManaged) {
+            rect.offset(0, -mStatusbarHeight);
+        }
+
+        if (!mIsWindowManaged) {
+            // adjust global anchor view position for viewgroups that are smaller than the display
+            rect.offset(-(mDisplayWidth - mDesiredTutorialScreenWidth), -(mDisplayHeight - mDesiredTutorialScreenHeight));
+        }
+    }
+
+    /**
+     * recalculates the bounds of all highlight views and invalidates the old and new area
+     * of every highlight that moved since the last frame.
+     */
+    private void updateHighlightBounds () {
+        Rect bounds = mHighlightBoundsTmp;
+        for (HighlightEntry entry : mHightlightViews) {
+            calcHighlightBounds(entry.view, bounds);
+            if (!bounds.equals(entry.rect)) {
+                damage(entry.rect);
+                entry.rect.set(bounds);
+                damage(entry.rect);
+                mHighlightIndexDirty = true;
+                mDimPathDirty = true;
             }
+        }
+        invalidateDamage();
+    }
+
+    /**
+     * adds an area that has to be redrawn with the next {@link #invalidateDamage()}.
+     *
+     * @param rect the damaged area
+     */
+    private void damage ( @Nonnull Rect rect ) {
+        if (!rect.isEmpty()) {
+            mDamage.union(rect);
+        }
+    }
+
+    /**
+     * invalidates the union of all damaged areas instead of the whole dim layer.
+     * only software rendering clips the redraw to this area. hardware accelerated windows ignore the dirty rect
+     * since lollipop and re-record the whole dim layer, the damage then only avoids invalidations without changes.
+     */
+    private void invalidateDamage () {
+        if (!mDamage.isEmpty()) {
+            mFrameDamage.union(mDamage);
+            invalidate(mDamage);
+            mDamage.setEmpty();
+        }
+    }
 
-            if (!mIsWindowManaged) {
-                // adjust global anchor view position for viewgroups that are smaller than the display
-                rect.offset(-(mDisplayWidth - mDesiredTutorialScreenWidth), -(mDisplayHeight - mDesiredTutorialScreenHeight));
+    /**
+     * returns the number of pixels of the dim layer that were damaged for the last frame.
+     * meant for debugging invalidation, the count is based on the areas invalidated since the previous
+     * {@link #onDraw} call, or the whole view if it was invalidated completely. on hardware accelerated windows
+     * the whole dim layer is re-recorded anyway, see {@link #invalidateDamage()}.
+     *
+     * @return redrawn pixels
+     */
+    public long getLastFrameRedrawnPixels () {
+        return mLastFrameRedrawnPixels;
+    }
+
+    private void startHighlightTracking () {
+        if (mHightlightViews.isEmpty() || mHighlightTreeObserver != null) {
+            return;
+        }
+        // the highlight views scroll and animate in their own window, which may not be ours
+        mHighlightTreeObserver = mHightlightViews.get(0).view.getViewTreeObserver();
+        mHighlightTreeObserver.addOnPreDrawListener(mHighlightTracker);
+    }
+
+    private void stopHighlightTracking () {
+        if (mHighlightTreeObserver == null) {
+            return;
+        }
+        if (mHighlightTreeObserver.isAlive()) {
+            mHighlightTreeObserver.removeOnPreDrawListener(mHighlightTracker);
+        } else {
+            mHightlightViews.get(0).view.getViewTreeObserver().removeOnPreDrawListener(mHighlightTracker);
+        }
+        mHighlightTreeObserver = null;
+    }
+
+    /**
+     * hands all highlight masks back to the {@link HighlightMaskPool}. the masks are captured again
+     * when this layout is attached the next time.
+     */
+    public void releaseHighlightMasks () {
+        for (HighlightEntry entry : mHightlightViews) {
+            if (entry.mask != null) {
+                HighlightMaskPool.release(entry.mask);
+                entry.mask = null;
             }
+        }
+    }
 
-            if (!e.mUseViewBoundsAsMask && (view.getMeasuredHeight() > 0 && view.getMeasuredWidth() > 0)) {
+    private void captureHighlightMask ( @Nonnull HighlightEntry entry ) {
+        View view = entry.view;
+        if (entry.useBoundsAsmask || entry.mask != null || view.getMeasuredHeight() <= 0 || view.getMeasuredWidth() <= 0) {
+            return;
+        }
 
-                if (view.getBackground() == null) {
-                    view.setBackgroundColor(Color.WHITE);
-                    resetBackground = true;
-                }
+        boolean resetBackground = false;
+        if (view.getBackground() == null) {
+            view.setBackgroundColor(Color.WHITE);
+            resetBackground = true;
+        }
 
-                if (!view.isDrawingCacheEnabled()) {
-                    view.setDrawingCacheEnabled(true);
-                    resetCache = true;
-                }
-                view.buildDrawingCache();
-                Bitmap b = view.getDrawingCache();
-                if (b != null) {
-                    Bitmap cache = Bitmap.createBitmap(b);
-                    mHightlightViews.add(new HighlightEntry(view, rect, cache, e.mUseViewBoundsAsMask));
-                    view.destroyDrawingCache();
-                } else {
-                    b = Bitmap.createBitmap(view.getMeasuredWidth(), view.getMeasuredHeight(), Bitmap.Config.ARGB_8888);
-                    Canvas c = new Canvas(b);
-                    view.draw(c);
-                    mHightlightViews.add(new HighlightEntry(view, rect, b, e.mUseViewBoundsAsMask));
+        // the mask is only used to clear the dimmed background, so its alpha channel is all we need
+        Bitmap mask = HighlightMaskPool.obtain(view.getMeasuredWidth(), view.getMeasuredHeight(), Bitmap.Config.ALPHA_8, mMetrics);
+        Canvas c = new Canvas(mask);
+        c.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(c);
+        entry.mask = mask;
+
+        if (resetBackground) {
+            view.setBackgroundResource(0);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow () {
+        super.onAttachedToWindow();
+        mIsAttached = true;
+        // recapture masks that were released when the tutorial was dismissed
+        for (HighlightEntry entry : mHightlightViews) {
+            captureHighlightMask(entry);
+        }
+        startHighlightTracking();
+        startAnchorTracking();
+    }
+
+    //region anchor follow
+
+    /**
+     * lets the bubbles follow their anchors in every frame, e.g. while the anchors scroll or animate.
+     * as long as a bubble fits at its side of the anchor it is only moved and its funnel is shifted,
+     * a new measure and layout pass is only requested if a bubble would leave the screen or hit another bubble.
+     *
+     * @param followAnchor true to follow the anchor, false by default
+     */
+    public void setFollowAnchor ( boolean followAnchor ) {
+        if (mFollowAnchor == followAnchor) {
+            return;
+        }
+        mFollowAnchor = followAnchor;
+        if (!followAnchor) {
+            stopAnchorTracking();
+        } else if (mIsAttached) {
+            startAnchorTracking();
+        }
+    }
+
+    /**
+     * returns how often the bubble followed its anchor without a measure and layout pass.
+     *
+     * @return number of translation only updates
+     */
+    public int getAnchorFollowUpdates () {
+        return mAnchorFollowUpdates;
+    }
+
+    private void startAnchorTracking () {
+        if (!mFollowAnchor) {
+            return;
+        }
+        // the anchors move in their own windows, which may not be ours, and each window is observed once
+        for (BubbleEntry entry : mBubbles) {
+            ViewTreeObserver observer = entry.anchor.getViewTreeObserver();
+            if (!mAnchorTreeObservers.contains(observer)) {
+                observer.addOnPreDrawListener(mAnchorTracker);
+                mAnchorTreeObservers.add(observer);
+            }
+        }
+    }
+
+    private void stopAnchorTracking () {
+        if (mAnchorTreeObservers.isEmpty()) {
+            return;
+        }
+        boolean hasDeadObserver = false;
+        for (ViewTreeObserver observer : mAnchorTreeObservers) {
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(mAnchorTracker);
+            } else {
+                hasDeadObserver = true;
+            }
+        }
+        if (hasDeadObserver) {
+            // a dead observer was merged into the one of the window its anchor was attached to
+            for (BubbleEntry entry : mBubbles) {
+                ViewTreeObserver observer = entry.anchor.getViewTreeObserver();
+                if (observer.isAlive()) {
+                    observer.removeOnPreDrawListener(mAnchorTracker);
                 }
+            }
+        }
+        mAnchorTreeObservers.clear();
+    }
+
+    private void followAnchor () {
+        if (isLayoutRequested()) {
+            return;
+        }
+
+        for (int i = 0; i < mBubbles.size(); i++) {
+            BubbleEntry entry = mBubbles.get(i);
+            if (!entry.hasPos || entry.anchorIsDetached) {
+                continue;
+            }
+
+            Rect anchorBounds = entry.anchorBounds;
+            Rect placedAnchorBounds = entry.placedAnchorBounds;
+            updateAnchorBounds(entry);
+            if (anchorBounds.equals(placedAnchorBounds)) {
+                continue;
+            }
+            int dx = anchorBounds.left - placedAnchorBounds.left;
+            int dy = anchorBounds.top - placedAnchorBounds.top;
+
+            // a resized or clipped anchor may need another side, same for a bubble that would leave the screen
+            if (anchorBounds.width() != placedAnchorBounds.width() || anchorBounds.height() != placedAnchorBounds.height()
+                    || !translateTutorial(entry, i, dx, dy)) {
+                requestLayout();
+                return;
+            }
+        }
+    }
+
+    /**
+     * moves a tutorial along with its anchor without a layout pass. the bubble slides along the anchor side
+     * until it hits the screen bounds, from there on only the funnel is moved.
+     *
+     * @return false if the tutorial does not fit at its side of the anchor anymore
+     */
+    private boolean translateTutorial ( @Nonnull BubbleEntry entry, int index, int dx, int dy ) {
+        View tutorial = entry.tutorial;
+        int width = tutorial.getMeasuredWidth();
+        int height = tutorial.getMeasuredHeight();
+        int minLeft = getPaddingLeft();
+        int maxLeft = mDesiredTutorialScreenWidth - getPaddingRight() - width;
+        int minTop = getPaddingTop();
+        int maxTop = mDesiredTutorialScreenHeight - getPaddingBottom() - height;
+        if (maxLeft < minLeft || maxTop < minTop) {
+            return false;
+        }
+
+        int left = entry.pos.left + dx;
+        int top = entry.pos.top + dy;
+        boolean horizontal = entry.gravity == Gravity.TOP || entry.gravity == Gravity.BOTTOM;
+        boolean clamped;
+        if (horizontal) {
+            if (top < minTop || top > maxTop) {
+                return false;
+            }
+            int clampedLeft = Math.max(minLeft, Math.min(maxLeft, left));
+            clamped = clampedLeft != left;
+            left = clampedLeft;
+        } else {
+            if (left < minLeft || left > maxLeft) {
+                return false;
+            }
+            int clampedTop = Math.max(minTop, Math.min(maxTop, top));
+            clamped = clampedTop != top;
+            top = clampedTop;
+        }
+
+        // neither other bubbles nor the anchors they point at may be covered, the same as in the measure pass
+        for (BubbleEntry other : mBubbles) {
+            if (other == entry) {
+                continue;
+            }
+            if (other.hasPos && other.bubbleBounds.intersects(left, top, left + width, top + height)) {
+                return false;
+            }
+            if (other.anchorBounds.intersects(left, top, left + width, top + height)) {
+                return false;
+            }
+        }
+
+        Rect anchorBounds = entry.anchorBounds;
+        if (clamped && entry.bubbleDrawable != null) {
+            // the bubble stopped at the screen bounds, the funnel has to move towards the anchor instead
+            float anchorCenter = horizontal ? anchorBounds.exactCenterX() - left : anchorBounds.exactCenterY() - top;
+            float funnelReach = mBubbleCornerRadius + mFunnelWidth / 2f;
+            if (anchorCenter < funnelReach || anchorCenter > (horizontal ? width : height) - funnelReach) {
+                return false;
+            }
+
+            float funnelPosition = PlacementSolver.calcFunnelPosition(entry.gravity, anchorBounds.left, anchorBounds.top,
+                    anchorBounds.right, anchorBounds.bottom, left, top, width, height, mBubbleCornerRadius, mFunnelWidth);
+            entry.bubbleDrawable.getBubbleBuilder().setFunnelPointRelative(funnelPosition).build();
+        }
+
+        // moves the render node of the tutorial, neither a measure nor a layout pass is needed
+        tutorial.offsetLeftAndRight(left - entry.pos.left);
+        tutorial.offsetTopAndBottom(top - entry.pos.top);
+        entry.pos.left = left;
+        entry.pos.top = top;
+        entry.placedAnchorBounds.set(anchorBounds);
+        mAnchorFollowUpdates++;
+
+        damage(entry.bubbleBounds);
+        entry.bubbleBounds.offsetTo(left, top);
+        damage(entry.bubbleBounds);
+        invalidateDamage();
+
+        // the next measure pass compares against the moved anchor, so it can still be skipped
+        int offset = CONTAINER_FINGERPRINT_SIZE + index * BUBBLE_FINGERPRINT_SIZE;
+        mLastMeasureFingerprint[offset] = anchorBounds.left;
+        mLastMeasureFingerprint[offset + 1] = anchorBounds.top;
+        mLastMeasureFingerprint[offset + 2] = anchorBounds.right;
+        mLastMeasureFingerprint[offset + 3] = anchorBounds.bottom;
+        return true;
+    }
+    //endregion
+
+    //region animations
+
+    /**
+     * enables the enter and exit animations, enabled by default.
+     * they need JELLY_BEAN or above and are skipped on older devices.
+     *
+     * @param animated false to show and dismiss without animation
+     */
+    public void setAnimated ( boolean animated ) {
+        mAnimated = animated;
+    }
+
+    /**
+     * fades in the dim and, once it is placed, moves the bubble in from its anchor.
+     * only alpha, scale and translation are animated, so no layout pass is triggered, and a hardware layer
+     * exists only while the animation runs.
+     */
+    public void animateEnter () {
+        // shown again, the container stays and the exit end action is dropped
+        mPendingExitAction = null;
+        cancelAnimations();
+        if (!canAnimate()) {
+            return;
+        }
+
+        mEnterAnimating = true;
+        setAlpha(0f);
+        fadeContainer(1f, ENTER_DURATION);
+        boolean placed = mIsAttached && !isLayoutRequested();
+        for (BubbleEntry entry : mBubbles) {
+            if (placed && entry.hasPos) {
+                // shown again while still laid out, e.g. during the exit animation, no layout pass will follow
+                startBubbleEnter(entry);
             } else {
-                mHightlightViews.add(new HighlightEntry(view, rect, null, e.mUseViewBoundsAsMask));
+                // a bubble starts when it is laid out, before that its side of the anchor is unknown
+                entry.pendingEnter = true;
             }
+        }
+    }
+
+    /**
+     * fades out dim and bubble and runs the end action afterwards. without animation the end action is run
+     * right away. a canceled animation still runs the end action, {@link #cancelAnimations()} at once and a detach
+     * on the next main loop pass. only {@link #animateEnter()} drops it.
+     *
+     * @param endAction removes this container
+     */
+    public void animateExit ( @Nonnull final Runnable endAction ) {
+        cancelAnimations();
+        // dismissed before it was fully shown, no show latency is recorded
+        mShowRequestedNanos = 0;
+        if (!canAnimate() || !mIsAttached) {
+            endAction.run();
+            return;
+        }
 
-            if (resetCache) {
-                view.setDrawingCacheEnabled(false);
-                resetCache = false;
+        for (BubbleEntry entry : mBubbles) {
+            if (entry.tutorial.getVisibility() == VISIBLE) {
+                entry.tutorial.animate().alpha(0f).scaleX(ENTER_SCALE).scaleY(ENTER_SCALE).setDuration(EXIT_DURATION).withLayer();
             }
-            if (resetBackground) {
-                view.setBackgroundResource(0);
-                resetBackground = false;
+        }
+        mPendingExitAction = endAction;
+        fadeContainer(0f, EXIT_DURATION).withEndAction(new Runnable() {
+            @Override
+            public void run () {
+                resetAnimatedProperties();
+                runPendingExitAction();
             }
+        });
+    }
+
+    /**
+     * sets the layer type of this container. a running animation is finished first, otherwise a fade with
+     * a temporary layer would restore the old layer type when it ends.
+     *
+     * @param layerType one of the LAYER_TYPE constants of {@link View}
+     */
+    public void updateLayerType ( int layerType ) {
+        if (getLayerType() == layerType) {
+            return;
+        }
+        cancelAnimations();
+        setLayerType(layerType, null);
+    }
+
+    @Nonnull
+    private ViewPropertyAnimator fadeContainer ( float alpha, long duration ) {
+        ViewPropertyAnimator animator = animate().alpha(alpha).setDuration(duration);
+        // a container that already has a layer, e.g. for the dim masks, keeps it and fades without a second one
+        if (getLayerType() == LAYER_TYPE_NONE) {
+            animator.withLayer();
+        }
+        return animator;
+    }
+
+    private boolean canAnimate () {
+        return mAnimated && Build.VERSION.SDK_INT >= 16;
+    }
+
+    private void startBubbleEnter ( @Nonnull BubbleEntry entry ) {
+        View tutorial = entry.tutorial;
+        int width = tutorial.getMeasuredWidth();
+        int height = tutorial.getMeasuredHeight();
+        float translationX = 0;
+        float translationY = 0;
+
+        // grow out of the side that faces the anchor
+        switch (entry.gravity) {
+            case Gravity.LEFT:
+                tutorial.setPivotX(width);
+                tutorial.setPivotY(height / 2f);
+                translationX = mFunnelLength;
+                break;
+            case Gravity.TOP:
+                tutorial.setPivotX(width / 2f);
+                tutorial.setPivotY(height);
+                translationY = mFunnelLength;
+                break;
+            case Gravity.RIGHT:
+                tutorial.setPivotX(0);
+                tutorial.setPivotY(height / 2f);
+                translationX = -mFunnelLength;
+                break;
+            case Gravity.BOTTOM:
+                tutorial.setPivotX(width / 2f);
+                tutorial.setPivotY(0);
+                translationY = -mFunnelLength;
+                break;
+            default:
+                tutorial.setPivotX(width / 2f);
+                tutorial.setPivotY(height / 2f);
+        }
+
+        tutorial.setAlpha(0f);
+        tutorial.setScaleX(ENTER_SCALE);
+        tutorial.setScaleY(ENTER_SCALE);
+        tutorial.setTranslationX(translationX);
+        tutorial.setTranslationY(translationY);
+        ViewPropertyAnimator animator = tutorial.animate().alpha(1f).scaleX(1f).scaleY(1f)
+                .translationX(0f).translationY(0f).setDuration(ENTER_DURATION).withLayer();
+        if (entry == mBubbles.get(0)) {
+            animator.withEndAction(mEnterEndAction);
+        }
+    }
+
+    /**
+     * cancels all running animations. a canceled exit animation still runs its end action.
+     */
+    public void cancelAnimations () {
+        stopAnimations();
+        runPendingExitAction();
+    }
+
+    private void stopAnimations () {
+        mEnterAnimating = false;
+        animate().cancel();
+        for (BubbleEntry entry : mBubbles) {
+            entry.pendingEnter = false;
+            entry.tutorial.animate().cancel();
+        }
+        resetAnimatedProperties();
+    }
+
+    private void runPendingExitAction () {
+        Runnable exitAction = mPendingExitAction;
+        if (exitAction != null) {
+            // cleared first, the end action may remove this container and detach it
+            mPendingExitAction = null;
+            exitAction.run();
+        }
+    }
+
+    private void resetAnimatedProperties () {
+        setAlpha(1f);
+        for (BubbleEntry entry : mBubbles) {
+            View tutorial = entry.tutorial;
+            tutorial.setAlpha(1f);
+            tutorial.setScaleX(1f);
+            tutorial.setScaleY(1f);
+            tutorial.setTranslationX(0f);
+            tutorial.setTranslationY(0f);
+        }
+    }
+    //endregion
+
+    @Override
+    protected void onDetachedFromWindow () {
+        mIsAttached = false;
+        stopAnimations();
+        if (mPendingExitAction != null) {
+            // the end action removes this container, which must not happen while its parent detaches it
+            mMainHandler.post(mPendingExitRunner);
+        }
+        stopAnchorTracking();
+        stopHighlightTracking();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onConfigurationChanged ( Configuration newConfig ) {
+        super.onConfigurationChanged(newConfig);
+        applyEnvironment(TutorialEnvironment.get(getContext()));
+        if (mIsWindowManaged) {
+            // window managed tutorials cover the whole display, layout managed ones get the new parent size
+            // in the next measure pass
+            setDesiredTutorialScreenSize(mDisplayWidth, mDisplayHeight);
+        }
+        for (BubbleEntry entry : mBubbles) {
+            entry.hasPos = false;
         }
+        requestLayout();
     }
 
     public void setOffestFromAnchor ( Integer offestFromAnchor ) {
         this.mOffestFromAnchor = offestFromAnchor;
     }
 
+    /**
+     * sets how much better another side of the anchor has to fit before the bubble moves there.
+     * the current side is always left if the bubble does not fit into it anymore.
+     *
+     * @param margin relative advantage, e.g. {@code 0.15f} for 15% (the default), {@code 0} to always take the best side
+     */
+    public void setPlacementHysteresis ( float margin ) {
+        mPlacementHysteresis = margin;
+    }
+
+    /**
+     * records the bubble backgrounds into pictures, which are replayed until their geometry or color changes,
+     * see {@link BubbleDrawable.BubbleBuilder#setRecordingEnabled(boolean)}.
+     *
+     * @param recordBubbles true to record, false by default
+     */
+    public void setRecordBubbles ( boolean recordBubbles ) {
+        mRecordBubbles = recordBubbles;
+        for (BubbleEntry entry : mBubbles) {
+            if (entry.bubbleDrawable != null) {
+                entry.bubbleDrawable.getBubbleBuilder().setRecordingEnabled(recordBubbles).build();
+            }
+        }
+    }
+
+    /**
+     * returns how often a bubble moved to another side of its anchor. every change rebuilds the bubble and
+     * needs another layout pass.
+     *
+     * @return number of gravity changes
+     */
+    public int getGravityChanges () {
+        return mGravityChanges;
+    }
+
+    /**
+     * returns how many measure passes were skipped, because anchor, container and tutorial did not change
+     * since the previous pass.
+     *
+     * @return number of skipped measure passes
+     */
+    public int getSkippedMeasurePasses () {
+        return mSkippedMeasurePasses;
+    }
+
+    /**
+     * starts the show latency measurement, which ends when the bubble is drawn for the first time or, when
+     * animated, when its enter animation ended. see {@link TutorialTimings#getShowLatency()}.
+     */
+    public void markShowRequested () {
+        mShowRequestedNanos = TutorialTimings.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    private void recordShowLatency ( long now ) {
+        if (mShowRequestedNanos != 0) {
+            TutorialTimings.getShowLatency().record(now - mShowRequestedNanos);
+            mShowRequestedNanos = 0;
+        }
+    }
+
     @Override
     protected void onMeasure ( int widthMeasureSpec, int heightMeasureSpec ) {
+        boolean timed = TutorialTimings.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
+
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        updateDesiredTutorialScreenSize(widthMeasureSpec, heightMeasureSpec);
+        measureTutorial(widthMeasureSpec, heightMeasureSpec);
+
+        if (timed) {
+            TutorialTimings.getMeasureDuration().record(System.nanoTime() - start);
+        }
+    }
 
-        int childCount = getChildCount();
-        if (childCount == 0) {
+    /**
+     * layout managed containers take the size their parent offers, so anchor and highlight offsets are calculated
+     * from the same configuration as the display size, e.g. after a rotation.
+     */
+    private void updateDesiredTutorialScreenSize ( int widthMeasureSpec, int heightMeasureSpec ) {
+        if (mIsWindowManaged || MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED
+                || MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.UNSPECIFIED) {
             return;
         }
 
-        if (childCount > 1) {
-            throw new IllegalStateException("this view can only handle one child in layout");
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = MeasureSpec.getSize(heightMeasureSpec);
+        if (width > 0 && height > 0) {
+            setDesiredTutorialScreenSize(width, height);
         }
+    }
 
-        // 1. calc boxes
-        calcDisplayableAreas();
+    private void measureTutorial ( int widthMeasureSpec, int heightMeasureSpec ) {
+        int count = mBubbles.size();
+        if (count == 0) {
+            return;
+        }
 
-        // 2. measure the popup
-        View tutorial = getChildAt(0);
+        // 1. reuse the previous placement if nothing changed since the last pass
+        boolean placed = true;
+        for (BubbleEntry entry : mBubbles) {
+            updateAnchorBounds(entry);
+            placed &= entry.hasPos && !entry.tutorial.isLayoutRequested();
+        }
+        fillMeasureFingerprint(mMeasureFingerprint, widthMeasureSpec, heightMeasureSpec);
+        if (placed && Arrays.equals(mMeasureFingerprint, mLastMeasureFingerprint)) {
+            mSkippedMeasurePasses++;
+            mMetrics.onMeasurePass(true);
+            return;
+        }
+
+        // 2. place one tutorial after another, each placed bubble is an obstacle for the following ones
+        placed = true;
+        for (int i = 0; i < count; i++) {
+            BubbleEntry entry = mBubbles.get(i);
+            calcDisplayableAreas(entry);
+            measureTutorialUnconstrained(entry.tutorial);
+            measureTutorialInLargestBox(entry, fillObstacles(i));
+            placed &= entry.hasPos;
+        }
+        mMetrics.onMeasurePass(false);
+
+        if (placed) {
+            fillMeasureFingerprint(mLastMeasureFingerprint, widthMeasureSpec, heightMeasureSpec);
+        }
+    }
 
+    private void measureTutorialUnconstrained ( @Nonnull View tutorial ) {
         LayoutParams params = tutorial.getLayoutParams();
         int specHeight, specWidth;
 
@@ -342,281 +1201,289 @@ public class TutorialScreenContainerLayout extends ViewGroup {
         }
         // get how big this view want to be
         tutorial.measure(specWidth, specHeight);
+    }
+
+    /**
+     * collects the anchors of all other tutorials and the bubbles placed before the given one.
+     *
+     * @param index index of the tutorial that is placed next
+     * @return number of obstacles in {@link #mObstaclesTmp}
+     */
+    private int fillObstacles ( int index ) {
+        int count = mBubbles.size();
+        if (mObstaclesTmp.length < count * 2 * 4) {
+            mObstaclesTmp = new int[count * 2 * 4];
+        }
+
+        int obstacles = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == index) {
+                continue;
+            }
+            BubbleEntry entry = mBubbles.get(i);
+            obstacles = addObstacle(obstacles, entry.anchorBounds.left, entry.anchorBounds.top,
+                    entry.anchorBounds.right, entry.anchorBounds.bottom);
+            if (i < index && entry.hasPos) {
+                obstacles = addObstacle(obstacles, entry.pos.left, entry.pos.top,
+                        entry.pos.left + entry.tutorial.getMeasuredWidth(), entry.pos.top + entry.tutorial.getMeasuredHeight());
+            }
+        }
+        return obstacles;
+    }
+
+    private int addObstacle ( int obstacles, int left, int top, int right, int bottom ) {
+        int offset = obstacles * 4;
+        mObstaclesTmp[offset] = left;
+        mObstaclesTmp[offset + 1] = top;
+        mObstaclesTmp[offset + 2] = right;
+        mObstaclesTmp[offset + 3] = bottom;
+        return obstacles + 1;
+    }
 
-        measureTutorialInLargestBox(tutorial);
+    private void fillMeasureFingerprint ( @Nonnull int[] fingerprint, int widthMeasureSpec, int heightMeasureSpec ) {
+        fingerprint[0] = widthMeasureSpec;
+        fingerprint[1] = heightMeasureSpec;
+        fingerprint[2] = mDesiredTutorialScreenWidth;
+        fingerprint[3] = mDesiredTutorialScreenHeight;
+        fingerprint[4] = getPaddingLeft();
+        fingerprint[5] = getPaddingTop();
+        fingerprint[6] = getPaddingRight();
+        fingerprint[7] = getPaddingBottom();
+        fingerprint[8] = mFunnelLength;
+        fingerprint[9] = mFunnelWidth;
+        fingerprint[10] = mOffestFromAnchor;
+        fingerprint[11] = mBubbleCornerRadius;
+        fingerprint[12] = mTutorialBackgroundColor;
+
+        for (int i = 0; i < mBubbles.size(); i++) {
+            BubbleEntry entry = mBubbles.get(i);
+            int offset = CONTAINER_FINGERPRINT_SIZE + i * BUBBLE_FINGERPRINT_SIZE;
+            fingerprint[offset] = entry.anchorBounds.left;
+            fingerprint[offset + 1] = entry.anchorBounds.top;
+            fingerprint[offset + 2] = entry.anchorBounds.right;
+            // the bubble size is measured from the values above, a changed content requests a layout of the
+            // bubble itself and is caught by isLayoutRequested()
+            fingerprint[offset + 3] = entry.anchorBounds.bottom;
+        }
     }
 
     @Override
     protected void onLayout ( boolean changed, int l, int t, int r, int b ) {
-        View tutorial = getChildAt(0);
+        boolean timed = TutorialTimings.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
 
-        // finally layout tutorial at calculated position
-        if (mChildPos != null) {
-            tutorial.layout(mChildPos.left, mChildPos.top, mChildPos.left + tutorial.getMeasuredWidth(), mChildPos.top + tutorial.getMeasuredHeight());
-            tutorial.setVisibility(VISIBLE);
+        layoutTutorial();
+
+        if (timed) {
+            TutorialTimings.getLayoutDuration().record(System.nanoTime() - start);
         }
     }
 
-    private void measureTutorialInLargestBox ( @Nonnull View tutorial ) {
-        int bestGravity = 0;
-        float bestValue = Float.MAX_VALUE;
+    private void layoutTutorial () {
+        for (BubbleEntry entry : mBubbles) {
+            layoutTutorial(entry);
+        }
+        invalidateDamage();
+    }
 
-        for (Map.Entry<Integer, DisplayBox> entry : mDisplayAreas.entrySet()) {
-            Rect entryRect = entry.getValue().rect;
-            float w = Math.abs(tutorial.getMeasuredWidth() / (float) entryRect.width());
-            float h = Math.abs(tutorial.getMeasuredHeight() / (float) entryRect.height());
+    private void layoutTutorial ( @Nonnull BubbleEntry entry ) {
+        // finally layout tutorial at calculated position
+        if (entry.hasPos) {
+            View tutorial = entry.tutorial;
+            int left = entry.pos.left;
+            int top = entry.pos.top;
+            int right = left + tutorial.getMeasuredWidth();
+            int bottom = top + tutorial.getMeasuredHeight();
+            tutorial.layout(left, top, right, bottom);
+            tutorial.setVisibility(VISIBLE);
+            if (entry.pendingEnter) {
+                entry.pendingEnter = false;
+                startBubbleEnter(entry);
+            }
 
-            if (w + h < bestValue) {
-                bestValue = w + h;
-                bestGravity = entry.getKey();
+            Rect bubbleBounds = entry.bubbleBounds;
+            if (bubbleBounds.left != left || bubbleBounds.top != top || bubbleBounds.right != right || bubbleBounds.bottom != bottom) {
+                damage(bubbleBounds);
+                bubbleBounds.set(left, top, right, bottom);
+                damage(bubbleBounds);
             }
         }
+    }
 
-        DisplayBox bestFittingBox = mDisplayAreas.get(bestGravity);
-        if (bestFittingBox != null) {
-
-            BubbleDrawable.BubbleBuilder bubbleBuilder = BubbleDrawable.createBubbleBuilder();
+    private void measureTutorialInLargestBox ( @Nonnull BubbleEntry entry, int obstacleCount ) {
+        View tutorial = entry.tutorial;
+        int[] initialPadding = entry.initialPadding;
+        int bestBox = mPlacementSolver.findFreeBox(tutorial.getMeasuredWidth(), tutorial.getMeasuredHeight(),
+                entry.gravity, mPlacementHysteresis, mObstaclesTmp, obstacleCount);
+        if (bestBox != PlacementSolver.NO_BOX) {
+
+            // reconfigure the existing bubble, only changed geometry will be rebuilt
+            if (entry.bubbleDrawable == null) {
+                entry.bubbleDrawable = BubbleDrawable.createBubbleBuilder().build();
+                entry.bubbleDrawable.setMetricsListener(mMetrics);
+            }
+            BubbleDrawable.BubbleBuilder bubbleBuilder = entry.bubbleDrawable.getBubbleBuilder();
             bubbleBuilder.setBubbleCorner(mBubbleCornerRadius)
                     .setBubbleColor(mTutorialBackgroundColor)
                     .setEdgeThickness(0f)
-                    .setFunnelWidth(mFunnelWidth);
+                    .setFunnelWidth(mFunnelWidth)
+                    .setRecordingEnabled(mRecordBubbles);
+
+            int gravity = mPlacementSolver.getGravity(bestBox);
+            if (entry.gravity != Gravity.NO_GRAVITY && entry.gravity != gravity) {
+                mGravityChanges++;
+                mMetrics.onGravityChanged(entry.gravity, gravity);
+            }
+            entry.gravity = gravity;
 
             // configure bubble and tutorial views padding
-            switch (bestFittingBox.gravity) {
+            switch (gravity) {
                 case Gravity.LEFT:
                     bubbleBuilder.setFunnelGravity(Gravity.RIGHT);
                     bubbleBuilder.setFunnelVector(mFunnelLength, 0);
-                    tutorial.setPadding(mInitialTutorialPadding[0], mInitialTutorialPadding[1],
-                            mInitialTutorialPadding[2] + mFunnelLength, mInitialTutorialPadding[3]);
+                    tutorial.setPadding(initialPadding[0], initialPadding[1],
+                            initialPadding[2] + mFunnelLength, initialPadding[3]);
                     break;
                 case Gravity.TOP:
                     bubbleBuilder.setFunnelGravity(Gravity.BOTTOM);
                     bubbleBuilder.setFunnelVector(0, mFunnelLength);
-                    tutorial.setPadding(mInitialTutorialPadding[0], mInitialTutorialPadding[1], mInitialTutorialPadding[2],
-                            mInitialTutorialPadding[3] + mFunnelLength);
+                    tutorial.setPadding(initialPadding[0], initialPadding[1], initialPadding[2],
+                            initialPadding[3] + mFunnelLength);
                     break;
                 case Gravity.RIGHT:
                     bubbleBuilder.setFunnelGravity(Gravity.LEFT);
                     bubbleBuilder.setFunnelVector(mFunnelLength, 0);
-                    tutorial.setPadding(mInitialTutorialPadding[0] + mFunnelLength, mInitialTutorialPadding[1],
-                            mInitialTutorialPadding[2], mInitialTutorialPadding[3]);
+                    tutorial.setPadding(initialPadding[0] + mFunnelLength, initialPadding[1],
+                            initialPadding[2], initialPadding[3]);
                     break;
                 case Gravity.BOTTOM:
                     bubbleBuilder.setFunnelGravity(Gravity.TOP);
                     bubbleBuilder.setFunnelVector(0, mFunnelLength);
-                    tutorial.setPadding(mInitialTutorialPadding[0], mInitialTutorialPadding[1] + mFunnelLength,
-                            mInitialTutorialPadding[2], mInitialTutorialPadding[3]);
+                    tutorial.setPadding(initialPadding[0], initialPadding[1] + mFunnelLength,
+                            initialPadding[2], initialPadding[3]);
                     break;
                 default:
             }
 
-            tutorial.measure(MeasureSpec.makeMeasureSpec(bestFittingBox.rect.width(), MeasureSpec.AT_MOST),
-                    MeasureSpec.makeMeasureSpec(bestFittingBox.rect.height(), MeasureSpec.AT_MOST));
+            tutorial.measure(MeasureSpec.makeMeasureSpec(mPlacementSolver.getBoxWidth(bestBox), MeasureSpec.AT_MOST),
+                    MeasureSpec.makeMeasureSpec(mPlacementSolver.getBoxHeight(bestBox), MeasureSpec.AT_MOST));
 
             // calculate position within the display box according to anchor
-            mChildPos = calcInnerBoxPosition(bestFittingBox, tutorial);
-
-            float funnelPosition = calcFunnelPosition(bestFittingBox.gravity, mChildPos, tutorial);
+            mPlacementSolver.calcInnerBoxPosition(bestBox, tutorial.getMeasuredWidth(), tutorial.getMeasuredHeight());
+            entry.pos.left = mPlacementSolver.getChildLeft();
+            entry.pos.top = mPlacementSolver.getChildTop();
+            entry.hasPos = true;
+            entry.placedAnchorBounds.set(entry.anchorBounds);
+
+            float funnelPosition = mPlacementSolver.calcFunnelPosition(bestBox, tutorial.getMeasuredWidth(),
+                    tutorial.getMeasuredHeight(), mBubbleCornerRadius, mFunnelWidth);
             bubbleBuilder.setFunnelPointRelative(funnelPosition);
-            BubbleDrawable drawable = bubbleBuilder.build();
-
-            if (Build.VERSION.SDK_INT < 16) {
-                tutorial.setBackgroundDrawable(drawable);
-            } else {
-                tutorial.setBackground(drawable);
-            }
-        }
-    }
-
-    private float calcFunnelPosition ( int gravity, ChildPos childPos, View tutorial ) {
-        float relativePos = 0.5f;
-
-        switch (gravity) {
-            case Gravity.TOP:
-            case Gravity.BOTTOM:
-                if (mAnchorBounds.width() < tutorial.getMeasuredWidth()) {
-                    relativePos = (mAnchorBounds.exactCenterX() - childPos.left) / (tutorial.getMeasuredWidth() - mBubbleCornerRadius);
+            entry.bubbleDrawable = bubbleBuilder.build();
 
-                    float funnelOverflow = (tutorial.getMeasuredWidth() * relativePos) + (mFunnelWidth / 2);
-                    if (funnelOverflow > tutorial.getMeasuredWidth()) {
-                        relativePos = relativePos - (funnelOverflow / tutorial.getMeasuredWidth() - 1);
-                    }
-                }
-                break;
-            case Gravity.LEFT:
-            case Gravity.RIGHT:
-                if (mAnchorBounds.height() < tutorial.getMeasuredHeight()) {
-                    relativePos = (mAnchorBounds.exactCenterY() - childPos.top) / (tutorial.getMeasuredHeight() - mBubbleCornerRadius);
-
-                    float funnelOverflow = (tutorial.getMeasuredHeight() * relativePos) + (mFunnelWidth / 2);
-                    if (funnelOverflow > tutorial.getMeasuredHeight()) {
-                        relativePos = relativePos - (funnelOverflow / tutorial.getMeasuredHeight() - 1);
-                    }
-                }
-                break;
-            default:
-        }
-        return relativePos;
-    }
-
-    private ChildPos calcInnerBoxPosition ( @Nonnull DisplayBox displayBox, @Nonnull View tutorial ) {
-        ChildPos childPos = new ChildPos(displayBox.rect.left, displayBox.rect.top);
-
-        switch (displayBox.gravity) {
-            case Gravity.LEFT:
-                if (mAnchorBounds.bottom < mHalfTutroialScreenHeight) {
-                    // top
-                    childPos.top = displayBox.rect.top;
-                    if (childPos.top + tutorial.getMeasuredHeight() < mAnchorBounds.bottom) {
-                        childPos.top = mAnchorBounds.bottom - tutorial.getMeasuredHeight();
-                    }
-                } else if (mAnchorBounds.top > mHalfTutroialScreenHeight) {
-                    // bottom
-                    childPos.top = displayBox.rect.bottom - tutorial.getMeasuredHeight();
-                    if (childPos.top > mAnchorBounds.top) {
-                        childPos.top = mAnchorBounds.top;
-                    }
-                } else {
-                    // center
-                    childPos.top = mHalfTutroialScreenHeight - tutorial.getMeasuredHeight() / 2;
-                }
-                childPos.left = displayBox.rect.right - tutorial.getMeasuredWidth();
-                break;
-            case Gravity.TOP:
-                if (mAnchorBounds.right < mHalfTutorialScreenWidth) {
-                    // left
-                    childPos.left = displayBox.rect.left;
-                    if (childPos.left + tutorial.getMeasuredWidth() < mAnchorBounds.right) {
-                        childPos.left = mAnchorBounds.right - tutorial.getMeasuredWidth();
-                    }
-                } else if (mAnchorBounds.left > mHalfTutorialScreenWidth) {
-                    // right
-                    childPos.left = displayBox.rect.right - tutorial.getMeasuredWidth();
-                    if (childPos.left > mAnchorBounds.left) {
-                        childPos.left = mAnchorBounds.left;
-                    }
-                } else {
-                    // center
-                    childPos.left = mHalfTutorialScreenWidth - tutorial.getMeasuredWidth() / 2;
-                }
-                childPos.top = displayBox.rect.bottom - tutorial.getMeasuredHeight();
-                break;
-            case Gravity.RIGHT:
-                if (mAnchorBounds.bottom < mHalfTutroialScreenHeight) {
-                    // top
-                    childPos.top = displayBox.rect.top;
-                    if (childPos.top + tutorial.getMeasuredHeight() < mAnchorBounds.bottom) {
-                        childPos.top = mAnchorBounds.bottom - tutorial.getMeasuredHeight();
-                    }
-                } else if (mAnchorBounds.top > mHalfTutroialScreenHeight) {
-                    // bottom
-                    childPos.top = displayBox.rect.bottom - tutorial.getMeasuredHeight();
-                    if (childPos.top > mAnchorBounds.top) {
-                        childPos.top = mAnchorBounds.top;
-                    }
-                } else {
-                    // center
-                    childPos.top = mHalfTutroialScreenHeight - tutorial.getMeasuredHeight() / 2;
-                }
-                break;
-            case Gravity.BOTTOM:
-                if (mAnchorBounds.right < mHalfTutorialScreenWidth) {
-                    // left
-                    childPos.left = displayBox.rect.left;
-                    if (childPos.left + tutorial.getMeasuredWidth() < mAnchorBounds.right) {
-                        childPos.left = mAnchorBounds.right - tutorial.getMeasuredWidth();
-                    }
-                } else if (mAnchorBounds.left > mHalfTutorialScreenWidth) {
-                    // right
-                    childPos.left = displayBox.rect.right - tutorial.getMeasuredWidth();
-                    if (childPos.left > mAnchorBounds.left) {
-                        childPos.left = mAnchorBounds.left;
-                    }
+            if (tutorial.getBackground() != entry.bubbleDrawable) {
+                if (Build.VERSION.SDK_INT < 16) {
+                    tutorial.setBackgroundDrawable(entry.bubbleDrawable);
                 } else {
-                    // center
-                    childPos.left = mHalfTutorialScreenWidth - tutorial.getMeasuredWidth() / 2;
+                    tutorial.setBackground(entry.bubbleDrawable);
                 }
-                break;
-            default:
+            }
         }
-
-        return childPos;
     }
 
-    private void calcDisplayableAreas () {
-        if (mAnchor == null || mAnchorIsDetached) {
+    private void updateAnchorBounds ( @Nonnull BubbleEntry entry ) {
+        if (entry.anchorIsDetached) {
             return;
         }
 
-        mAnchor.getGlobalVisibleRect(mAnchorBounds);
+        Rect anchorBounds = entry.anchorBounds;
+        entry.anchor.getGlobalVisibleRect(anchorBounds);
 
         if (!mIsWindowManaged) {
-            mAnchorBounds.offset(-(mDisplayWidth - mDesiredTutorialScreenWidth), -(mDisplayHeight - mDesiredTutorialScreenHeight));
+            anchorBounds.offset(-(mDisplayWidth - mDesiredTutorialScreenWidth), -(mDisplayHeight - mDesiredTutorialScreenHeight));
         }
 
         if (!mIsWindowTranslucent && mIsWindowManaged) {
-            mAnchorBounds.offset(0, -mStatusbarHeight);
+            anchorBounds.offset(0, -mStatusbarHeight);
         }
+    }
 
-        // left
-        Rect left = new Rect();
-        left.left = getPaddingLeft();
-        left.top = getPaddingTop();
-        left.right = mAnchorBounds.left - mOffestFromAnchor;
-        left.bottom = mDesiredTutorialScreenHeight - getPaddingBottom();
-        mDisplayAreas.put(Gravity.LEFT, new DisplayBox(left, Gravity.LEFT));
-
-        // top
-        Rect top = new Rect();
-        top.left = getPaddingLeft();
-        top.top = getPaddingTop();
-        top.right = mDesiredTutorialScreenWidth - getPaddingRight();
-        top.bottom = mAnchorBounds.top - mOffestFromAnchor;
-        mDisplayAreas.put(Gravity.TOP, new DisplayBox(top, Gravity.TOP));
+    private void calcDisplayableAreas ( @Nonnull BubbleEntry entry ) {
+        Rect anchorBounds = entry.anchorBounds;
+        mPlacementSolver.calcBoxes(anchorBounds.left, anchorBounds.top, anchorBounds.right, anchorBounds.bottom,
+                getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom(),
+                mDesiredTutorialScreenWidth, mDesiredTutorialScreenHeight, mOffestFromAnchor);
+    }
 
-        // right
-        Rect right = new Rect();
-        right.left = mAnchorBounds.right + mOffestFromAnchor;
-        right.top = getPaddingTop();
-        right.right = mDesiredTutorialScreenWidth - getPaddingRight();
-        right.bottom = mDesiredTutorialScreenHeight - getPaddingBottom();
-        mDisplayAreas.put(Gravity.RIGHT, new DisplayBox(right, Gravity.RIGHT));
+    @Override
+    public void draw ( Canvas canvas ) {
+        boolean timed = TutorialTimings.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
 
-        // botton
-        Rect bottom = new Rect();
-        bottom.left = getPaddingLeft();
-        bottom.top = mAnchorBounds.bottom + mOffestFromAnchor;
-        bottom.right = mDesiredTutorialScreenWidth - getPaddingRight();
-        bottom.bottom = mDesiredTutorialScreenHeight - getPaddingBottom();
-        mDisplayAreas.put(Gravity.BOTTOM, new DisplayBox(bottom, Gravity.BOTTOM));
+        super.draw(canvas);
 
-        mDisplayAreas = (LinkedHashMap<Integer, DisplayBox>) sortByValue(mDisplayAreas);
+        if (timed) {
+            long end = System.nanoTime();
+            TutorialTimings.getDrawDuration().record(end - start);
 
+            if (!mEnterAnimating && getChildCount() > 0 && getChildAt(0).getVisibility() == VISIBLE) {
+                recordShowLatency(end);
+            }
+        }
     }
 
     @Override
     protected void onDraw ( Canvas canvas ) {
         super.onDraw(canvas);
 
-        for (HighlightEntry entry : mHightlightViews) {
-            if (entry.useBoundsAsmask && entry.rect != null) {
-                canvas.drawRect(entry.rect, mClearPaint);
-            } else if (entry.drawingCache != null && entry.rect != null) {
-                canvas.drawBitmap(entry.drawingCache, null, entry.rect, mClearPaint);
+        if (mFrameDamage.isEmpty()) {
+            mLastFrameRedrawnPixels = (long) getWidth() * getHeight();
+        } else {
+            mLastFrameRedrawnPixels = (long) mFrameDamage.width() * mFrameDamage.height();
+            mFrameDamage.setEmpty();
+        }
+
+        // software canvases are clipped to the damaged area, hardware canvases always cover the whole view
+        Rect clip = mDrawClipTmp;
+        if (!canvas.getClipBounds(clip)) {
+            clip.setEmpty();
+        }
+
+        if (mLayerFreeDimming) {
+            // dim everything except the highlights directly, no offscreen layer needed
+            if (mDimPathDirty) {
+                buildDimPath();
+            }
+            canvas.drawPath(mDimPath, mDimPaint);
+        } else {
+            for (HighlightEntry entry : mHightlightViews) {
+                if (entry.rect != null && !Rect.intersects(clip, entry.rect)) {
+                    // highlight is outside of the redrawn area of a software canvas
+                    continue;
+                }
+                if (entry.useBoundsAsmask && entry.rect != null) {
+                    canvas.drawRect(entry.rect, mClearPaint);
+                } else if (entry.mask != null && entry.rect != null) {
+                    canvas.drawBitmap(entry.mask, null, entry.rect, mClearPaint);
+                }
             }
         }
 
         if (DEBUG) {
             // display the displayable areas as colored boxes while debugging
-            for (Map.Entry<Integer, Paint> paints : mDebugPaints.entrySet()) {
-                DisplayBox box = mDisplayAreas.get(paints.getKey());
-                if (box != null) {
-                    canvas.drawRect(box.rect, paints.getValue());
+            if (mPlacementSolver.hasBoxes()) {
+                for (int i = 0; i < PlacementSolver.BOX_COUNT; i++) {
+                    Paint paint = mDebugPaints.get(mPlacementSolver.getGravity(i));
+                    if (paint != null) {
+                        canvas.drawRect(mPlacementSolver.getBoxLeft(i), mPlacementSolver.getBoxTop(i),
+                                mPlacementSolver.getBoxRight(i), mPlacementSolver.getBoxBottom(i), paint);
+                    }
                 }
             }
 
-            if (mAnchourDebugPaint != null && mAnchorBounds != null) {
-                canvas.drawRect(mAnchorBounds, mAnchourDebugPaint);
+            if (mAnchourDebugPaint != null) {
+                for (BubbleEntry entry : mBubbles) {
+                    canvas.drawRect(entry.anchorBounds, mAnchourDebugPaint);
+                }
             }
 
             canvas.drawRect(0, 0, 30, 30, mAnchourDebugPaint);
@@ -626,85 +1493,104 @@ public class TutorialScreenContainerLayout extends ViewGroup {
     @Override
     public boolean onInterceptTouchEvent ( MotionEvent ev ) {
         if (ev.getAction() == MotionEvent.ACTION_DOWN) {
+            if (mHighlightIndexDirty) {
+                rebuildHighlightIndex();
+            }
 
-            for (HighlightEntry entry : mHightlightViews) {
-                if (entry.rect.contains((int) ev.getX(), (int) ev.getY())) {
-                    entry.view.performClick();
-                }
+            int hits = mHighlightIndex.query((int) ev.getX(), (int) ev.getY(), mHighlightHitsTmp);
+            for (int i = 0; i < hits; i++) {
+                mHightlightViews.get(mHighlightHitsTmp[i]).view.performClick();
             }
         }
         return super.onInterceptTouchEvent(ev);
     }
 
+    private void rebuildHighlightIndex () {
+        int count = mHightlightViews.size();
+        if (mHighlightRectsTmp.length < count * 4) {
+            mHighlightRectsTmp = new int[count * 4];
+            mHighlightHitsTmp = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            Rect rect = mHightlightViews.get(i).rect;
+            mHighlightRectsTmp[i * 4] = rect.left;
+            mHighlightRectsTmp[i * 4 + 1] = rect.top;
+            mHighlightRectsTmp[i * 4 + 2] = rect.right;
+            mHighlightRectsTmp[i * 4 + 3] = rect.bottom;
+        }
+        mHighlightIndex.build(mHighlightRectsTmp, count);
+        mHighlightIndexDirty = false;
+    }
 
-    private Map sortByValue ( Map unsortMap ) {
-        List list = new LinkedList(unsortMap.entrySet());
 
-        Collections.sort(list, new Comparator() {
-            public int compare ( Object o1, Object o2 ) {
-                return ((Comparable) ((Map.Entry) (o1)).getValue())
-                        .compareTo(((Map.Entry) (o2)).getValue());
-            }
-        });
+    //region inner classes
+    private static class ChildPos {
+        int left;
+        int top;
 
-        Map sortedMap = new LinkedHashMap();
-        for (Iterator it = list.iterator(); it.hasNext(); ) {
-            Map.Entry entry = (Map.Entry) it.next();
-            sortedMap.put(entry.getKey(), entry.getValue());
+        public ChildPos ( int left, int top ) {
+            this.left = left;
+            this.top = top;
         }
-
-        return sortedMap;
     }
 
-
-    /**
-     * an quadrant area inside the layout based upon an anchor.
-     */
-    private static class DisplayBox implements Comparable<DisplayBox> {
+    private static class BubbleEntry implements OnAttachStateChangeListener {
         @Nonnull
-        Rect rect;
-        int gravity;
-        int area;
-
-        public DisplayBox ( @Nonnull Rect rect, int gravity ) {
-            this.rect = rect;
-            this.area = rect.width() * rect.height();
-            this.gravity = gravity;
+        final View tutorial;
+        @Nonnull
+        final View anchor;
+        @Nonnull
+        final int[] initialPadding;
+        @Nonnull
+        final Rect anchorBounds = new Rect();
+        // anchor bounds the current bubble position belongs to
+        @Nonnull
+        final Rect placedAnchorBounds = new Rect();
+        @Nonnull
+        final ChildPos pos = new ChildPos(0, 0);
+        boolean hasPos;
+        @Nonnull
+        final Rect bubbleBounds = new Rect();
+        @CheckForNull
+        BubbleDrawable bubbleDrawable;
+        int gravity = Gravity.NO_GRAVITY;
+        boolean anchorIsDetached;
+        boolean pendingEnter;
+
+        public BubbleEntry ( @Nonnull View tutorial, @Nonnull View anchor ) {
+            this.tutorial = tutorial;
+            this.anchor = anchor;
+            this.initialPadding = new int[]{tutorial.getPaddingLeft(), tutorial.getPaddingTop(),
+                    tutorial.getPaddingRight(), tutorial.getPaddingBottom()};
         }
 
         @Override
-        public int compareTo ( DisplayBox another ) {
-            return another.area - this.area;
+        public void onViewAttachedToWindow ( View v ) {
+            anchorIsDetached = false;
         }
 
         @Override
-        public String toString () {
-            return rect + "area: " + area;
-        }
-    }
-
-    //region inner classes
-    private static class ChildPos {
-        int left;
-        int top;
-
-        public ChildPos ( int left, int top ) {
-            this.left = left;
-            this.top = top;
+        public void onViewDetachedFromWindow ( View v ) {
+            // joba: workaround if anchor is an optionsMenuItem
+            // in this case, every time onCreateOptionsMenu is called, a new view is inflated
+            // for that menu item, however we still have the old reference. For now we indicate with
+            // a flag that we lost the current ref in onDetach. In measurement pass we don't update
+            // the bounds as they should not have changed (except menu items change in runtime within the same fragment)
+            anchorIsDetached = true;
         }
     }
 
     private static class HighlightEntry {
         Rect rect;
-        Bitmap drawingCache;
+        Bitmap mask;
         View view;
         boolean useBoundsAsmask;
 
-        public HighlightEntry ( @Nonnull View view, @Nonnull Rect rect, @Nullable Bitmap cache, boolean useBoundsAsmask ) {
+        public HighlightEntry ( @Nonnull View view, @Nonnull Rect rect, @Nullable Bitmap mask, boolean useBoundsAsmask ) {
             this.view = view;
             this.useBoundsAsmask = useBoundsAsmask;
             this.rect = rect;
-            this.drawingCache = cache;
+            this.mask = mask;
         }
     }
 
@@ -0,0 +1,153 @@
+package com.lovoo.tutorialbubbles.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Fixed size histogram of durations in nanoseconds.
+ * <p>
+ * Buckets are log-linear: every power of two range is split into {@value #SUB_BUCKET_COUNT} linear sub buckets,
+ * so any recorded value is reported with a relative error below 1 / {@value #SUB_BUCKET_COUNT} (about 3%).
+ * Values from 0 ns up to about 18 minutes are covered, larger values are counted in the last bucket.
+ * Recording never allocates, all counts live in one int array created with the histogram.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // highest power of two that gets its own buckets, 2^40 ns are about 18 minutes
+    private static final int MAX_EXPONENT = 40;
+    public static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    @Nonnull
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    /**
+     * records a duration.
+     *
+     * @param nanos duration in nanoseconds, negative values are counted as 0
+     */
+    public synchronized void record ( long nanos ) {
+        long value = Math.max(0, nanos);
+        mCounts[getBucketIndex(value)]++;
+        mTotalCount++;
+        mSum += value;
+        mMin = Math.min(mMin, value);
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * returns the value below or at which the given percentage of all recorded values lies.
+     *
+     * @param percentile percentile between 0 and 100, e.g. {@code 99.9}
+     * @return the highest value that is equivalent to the percentile within the bucket precision, 0 if empty
+     */
+    public synchronized long getValueAtPercentile ( double percentile ) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+
+        double clamped = Math.min(100d, Math.max(0d, percentile));
+        long target = Math.max(1, (long) Math.ceil(clamped / 100d * mTotalCount));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts[i];
+            if (count >= target) {
+                return Math.min(mMax, getBucketUpperBound(i));
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized long getTotalCount () {
+        return mTotalCount;
+    }
+
+    public synchronized long getMin () {
+        return mTotalCount == 0 ? 0 : mMin;
+    }
+
+    public synchronized long getMax () {
+        return mMax;
+    }
+
+    public synchronized double getMean () {
+        return mTotalCount == 0 ? 0 : (double) mSum / mTotalCount;
+    }
+
+    /**
+     * returns the raw count of a bucket, together with {@link #getBucketUpperBound(int)} this allows to upload
+     * the whole distribution.
+     *
+     * @param index bucket index between 0 and {@link #BUCKET_COUNT} (exclusive)
+     * @return number of recorded values within the bucket
+     */
+    public synchronized int getBucketCount ( int index ) {
+        return mCounts[index];
+    }
+
+    /**
+     * copies all counts into another histogram, e.g. to upload a consistent snapshot while recording goes on.
+     *
+     * @param target the histogram to overwrite
+     */
+    public void copyInto ( @Nonnull LatencyHistogram target ) {
+        if (target == this) {
+            return;
+        }
+        synchronized (this) {
+            synchronized (target) {
+                System.arraycopy(mCounts, 0, target.mCounts, 0, BUCKET_COUNT);
+                target.mTotalCount = mTotalCount;
+                target.mSum = mSum;
+                target.mMin = mMin;
+                target.mMax = mMax;
+            }
+        }
+    }
+
+    /**
+     * removes all recorded values.
+     */
+    public synchronized void reset () {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    /**
+     * returns the highest value that is counted in the given bucket.
+     *
+     * @param index bucket index between 0 and {@link #BUCKET_COUNT} (exclusive)
+     * @return upper bound in nanoseconds (inclusive)
+     */
+    public static long getBucketUpperBound ( int index ) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    static int getBucketIndex ( long value ) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+}
@@ -0,0 +1,108 @@
+package com.lovoo.tutorialbubbles.utils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.util.DisplayMetrics;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable snapshot of everything tutorials read from the device: display size, status bar height, default
+ * dimensions in px, window translucency and the overlay permission.
+ * <p>
+ * The snapshot is computed once and reused until the {@link Configuration} of the requesting context changes
+ * (rotation, multi window resize, density change) or a context with a different window translucency asks for it.
+ */
+public final class TutorialEnvironment {
+
+    private static final int DEFAULT_FUNNEL_WIDTH = 25;
+    private static final int DEFAULT_FUNNEL_LENGTH = 20;
+    private static final int DEFAULT_BUBBLE_CORNER_RADIUS = 5;
+    private static final int DEFAULT_OFFSET_FROM_ANCHOR = 5;
+    private static final int DEFAULT_TUTORIAL_PADDING = 15;
+
+    @CheckForNull
+    private static TutorialEnvironment sCurrent;
+
+    @Nonnull
+    private final Configuration mConfiguration;
+
+    public final int displayWidth;
+    public final int displayHeight;
+    public final int statusBarHeight;
+    public final boolean isWindowTranslucent;
+    public final boolean hasOverlayPermission;
+
+    public final int funnelWidth;
+    public final int funnelLength;
+    public final int bubbleCornerRadius;
+    public final int offsetFromAnchor;
+    public final int tutorialPadding;
+
+    private TutorialEnvironment ( @Nonnull Context context, @Nonnull Configuration configuration,
+                                  boolean isWindowTranslucent, boolean hasOverlayPermission ) {
+        mConfiguration = new Configuration(configuration);
+
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        displayWidth = displayMetrics.widthPixels;
+        displayHeight = displayMetrics.heightPixels;
+        statusBarHeight = Utils.getSystemStatusBarHeight(context);
+        this.isWindowTranslucent = isWindowTranslucent;
+        this.hasOverlayPermission = hasOverlayPermission;
+
+        funnelWidth = Utils.dpToPx(context, DEFAULT_FUNNEL_WIDTH);
+        funnelLength = Utils.dpToPx(context, DEFAULT_FUNNEL_LENGTH);
+        bubbleCornerRadius = Utils.dpToPx(context, DEFAULT_BUBBLE_CORNER_RADIUS);
+        offsetFromAnchor = Utils.dpToPx(context, DEFAULT_OFFSET_FROM_ANCHOR);
+        tutorialPadding = Utils.dpToPx(context, DEFAULT_TUTORIAL_PADDING);
+    }
+
+    /**
+     * returns the snapshot for the given context, a new one is only computed if the configuration or the
+     * window translucency changed since the last call.
+     *
+     * @param context should be some context deriving from activity, see {@link Utils#isWindowTranslucent(Context)}
+     * @return the current snapshot
+     */
+    @Nonnull
+    public static synchronized TutorialEnvironment get ( @Nonnull Context context ) {
+        Configuration configuration = context.getResources().getConfiguration();
+        boolean isWindowTranslucent = Utils.isWindowTranslucent(context);
+
+        TutorialEnvironment current = sCurrent;
+        if (current == null || current.isWindowTranslucent != isWindowTranslucent
+                || !current.mConfiguration.equals(configuration)) {
+            // requested permissions can't change while the app is running
+            boolean hasOverlayPermission = current != null ? current.hasOverlayPermission : hasAppWindowManagerPermission(context);
+            current = new TutorialEnvironment(context, configuration, isWindowTranslucent, hasOverlayPermission);
+            sCurrent = current;
+        }
+        return current;
+    }
+
+    /**
+     * drops the current snapshot, the next {@link #get(Context)} computes a new one.
+     */
+    public static synchronized void invalidate () {
+        sCurrent = null;
+    }
+
+    private static boolean hasAppWindowManagerPermission ( @Nonnull Context context ) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
+            if (info.requestedPermissions != null) {
+                for (String p : info.requestedPermissions) {
+                    if (p.equals("android.permission.SYSTEM_ALERT_WINDOW")) {
+                        return true;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
@@ -4,7 +4,6 @@ import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.os.Build;
-import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.Window;
 import android.view.WindowManager;
@@ -14,9 +13,6 @@ import android.view.WindowManager;
  */
 public class Utils {
 
-    private static int mScreenWidth = -1;
-    private static int mScreenHeight = -1;
-
     public static int dpToPx ( Context context, int dp ) {
         return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, context.getResources().getDisplayMetrics());
     }
@@ -31,21 +27,11 @@ public class Utils {
     }
 
     public static int getDisplayWidth ( Context context ) {
-        if (mScreenWidth == -1) {
-            DisplayMetrics displayMetrics = context.getResources()
-                    .getDisplayMetrics();
-            mScreenWidth = displayMetrics.widthPixels;
-        }
-        return mScreenWidth;
+        return TutorialEnvironment.get(context).displayWidth;
     }
 
     public static int getDisplayHeight ( Context context ) {
-        if (mScreenHeight == -1) {
-            DisplayMetrics displayMetrics = context.getResources()
-                    .getDisplayMetrics();
-            mScreenHeight = displayMetrics.heightPixels;
-        }
-        return mScreenHeight;
+        return TutorialEnvironment.get(context).displayHeight;
     }
 
     /**
@@ -57,9 +57,6 @@ public class Vector2D {
 	}
 	
 	public float getLength () {
-		if (x == 0f || y == 0f || x + y == 0f) {
-			return 0f;
-		}
 		return (float) Math.sqrt(x * x + y * y);
 	}
 	
@@ -93,6 +90,20 @@ public class Vector2D {
 		y *= value;
 	}
 	
+	/**
+	 * scales this vector to a length of 1, a null vector stays unchanged.
+	 *
+	 * @return this vector
+	 */
+	public Vector2D normalize () {
+		float l = getLength();
+		if (l != 0) {
+			x /= l;
+			y /= l;
+		}
+		return this;
+	}
+	
 	public void transform ( Matrix m ) {
 		Vector2D.transform(this, this, m);
 	}
@@ -102,14 +113,25 @@ public class Vector2D {
 	}
 	
 	public static void transform ( Vector2D src, Vector2D dst, Matrix m ) {
-		if (src == null || dst == null || m == null) {
+		transform(src, dst, m, new float[2]);
+	}
+	
+	/**
+	 * transforms {@code src} with the matrix and stores the result in {@code dst}, without allocating.
+	 *
+	 * @param src    source vector
+	 * @param dst    receives the result, may be {@code src}
+	 * @param m      the matrix
+	 * @param buffer scratch buffer with at least two entries, reuse it between calls
+	 */
+	public static void transform ( Vector2D src, Vector2D dst, Matrix m, float[] buffer ) {
+		if (src == null || dst == null || m == null || buffer == null || buffer.length < 2) {
 			return;
 		}
-		float[] p = new float[2];
-		p[0] = src.x;
-		p[1] = src.y;
-		m.mapPoints(p);
-		dst.set(p[0], p[1]);
+		buffer[0] = src.x;
+		buffer[1] = src.y;
+		m.mapPoints(buffer, 0, buffer, 0, 1);
+		dst.set(buffer[0], buffer[1]);
 	}
 	
 	public static Vector2D add ( Vector2D lhs, Vector2D rhs ) {
@@ -119,6 +141,18 @@ public class Vector2D {
 		return new Vector2D(lhs.x + rhs.x, lhs.y + rhs.y);
 	}
 	
+	/**
+	 * stores {@code lhs + rhs} in {@code out}, without allocating.
+	 *
+	 * @return {@code out} or null if any argument is null
+	 */
+	public static Vector2D add ( Vector2D lhs, Vector2D rhs, Vector2D out ) {
+		if (lhs == null || rhs == null || out == null) {
+			return null;
+		}
+		return out.set(lhs.x + rhs.x, lhs.y + rhs.y);
+	}
+	
 	public static Vector2D subtract ( Vector2D lhs, Vector2D rhs ) {
 		if (lhs == null || rhs == null) {
 			return null;
@@ -126,22 +160,33 @@ public class Vector2D {
 		return new Vector2D(lhs.x - rhs.x, lhs.y - rhs.y);
 	}
 	
+	/**
+	 * stores {@code lhs - rhs} in {@code out}, without allocating.
+	 *
+	 * @return {@code out} or null if any argument is null
+	 */
+	public static Vector2D subtract ( Vector2D lhs, Vector2D rhs, Vector2D out ) {
+		if (lhs == null || rhs == null || out == null) {
+			return null;
+		}
+		return out.set(lhs.x - rhs.x, lhs.y - rhs.y);
+	}
+	
 	public static float getDistance ( Vector2D lhs, Vector2D rhs ) {
 		if (lhs == null || rhs == null) {
 			return -1f;
 		}
-		Vector2D delta = Vector2D.subtract(lhs, rhs);
-		return delta.getLength();
+		float dx = lhs.x - rhs.x;
+		float dy = lhs.y - rhs.y;
+		return (float) Math.sqrt(dx * dx + dy * dy);
 	}
 	
 	public static float getSignedAngleBetween ( Vector2D a, Vector2D b ) {
 		if (a == null || b == null) {
 			return 0f;
 		}
-		Vector2D na = getNormalized(a);
-		Vector2D nb = getNormalized(b);
-		
-		return (float) (Math.atan2(nb.y, nb.x) - Math.atan2(na.y, na.x));
+		// normalizing does not change the direction, so atan2 works on the raw components
+		return (float) (Math.atan2(b.y, b.x) - Math.atan2(a.y, a.x));
 	}
 	
 	public static boolean isNullVector ( Vector2D v ) {
@@ -152,13 +197,21 @@ public class Vector2D {
 		if (v == null) {
 			return null;
 		}
-		float l = v.getLength();
-		if (l == 0) {
-			return new Vector2D();
-		} else {
-			return new Vector2D(v.x / l, v.y / l);
+		return getNormalized(v, new Vector2D());
+	}
+	
+	/**
+	 * stores the normalized vector in {@code out}, without allocating. a null vector results in a null vector.
+	 *
+	 * @param v   the vector
+	 * @param out receives the result, may be {@code v}
+	 * @return {@code out} or null if any argument is null
+	 */
+	public static Vector2D getNormalized ( Vector2D v, Vector2D out ) {
+		if (v == null || out == null) {
+			return null;
 		}
-		
+		return out.set(v).normalize();
 	}
 	
 	public static boolean pointInLine ( Vector2D d, Vector2D a, Vector2D b ) {
@@ -0,0 +1,103 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class HighlightIndexTest {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+
+    @Test
+    public void queryMatchesLinearScan () {
+        Random random = new Random(42);
+        HighlightIndex index = new HighlightIndex();
+
+        // rebuilt with shrinking and growing counts, the reused arrays must not leak old highlights
+        for (int count : new int[]{1, 7, 64, 3, 200}) {
+            int[] rects = createRects(random, count);
+            index.build(rects, count);
+            assertEquals(count, index.size());
+
+            int[] hits = new int[count];
+            int[] expected = new int[count];
+            for (int i = 0; i < 2000; i++) {
+                int x = random.nextInt(SCREEN_WIDTH + 200) - 100;
+                int y = random.nextInt(SCREEN_HEIGHT + 200) - 100;
+                assertQuery(index, rects, count, x, y, hits, expected);
+            }
+
+            // corners are inclusive at the top left and exclusive at the bottom right
+            for (int i = 0; i < count; i++) {
+                int o = i * 4;
+                assertQuery(index, rects, count, rects[o], rects[o + 1], hits, expected);
+                assertQuery(index, rects, count, rects[o + 2] - 1, rects[o + 3] - 1, hits, expected);
+                assertQuery(index, rects, count, rects[o + 2], rects[o + 3], hits, expected);
+            }
+        }
+    }
+
+    @Test
+    public void emptyIndexHasNoHits () {
+        HighlightIndex index = new HighlightIndex();
+        int[] hits = new int[1];
+        assertEquals(0, index.query(10, 10, hits));
+
+        index.build(new int[]{0, 0, 100, 100}, 1);
+        index.build(new int[0], 0);
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(10, 10, hits));
+    }
+
+    @Test
+    public void emptyRectsAreNeverHit () {
+        HighlightIndex index = new HighlightIndex();
+        int[] rects = {
+                10, 10, 10, 50,
+                10, 10, 50, 10,
+                0, 0, 100, 100
+        };
+        index.build(rects, 3);
+
+        int[] hits = new int[3];
+        assertEquals(1, index.query(10, 10, hits));
+        assertEquals(2, hits[0]);
+    }
+
+    private static void assertQuery ( HighlightIndex index, int[] rects, int count, int x, int y,
+                                      int[] hits, int[] expected ) {
+        int expectedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            if (x >= rects[o] && x < rects[o + 2] && y >= rects[o + 1] && y < rects[o + 3]) {
+                expected[expectedCount++] = i;
+            }
+        }
+
+        int hitCount = index.query(x, y, hits);
+        assertEquals("hits at " + x + ", " + y, expectedCount, hitCount);
+        for (int i = 0; i < hitCount; i++) {
+            assertEquals("hit " + i + " at " + x + ", " + y, expected[i], hits[i]);
+        }
+    }
+
+    private static int[] createRects ( Random random, int count ) {
+        int[] rects = new int[count * 4];
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            int left = random.nextInt(SCREEN_WIDTH);
+            int top = random.nextInt(SCREEN_HEIGHT);
+            // every tenth rect is empty, like a highlight view that is not laid out yet
+            int width = i % 10 == 9 ? 0 : 1 + random.nextInt(SCREEN_WIDTH / 3);
+            int height = 1 + random.nextInt(SCREEN_HEIGHT / 4);
+            rects[o] = left;
+            rects[o + 1] = top;
+            rects[o + 2] = left + width;
+            rects[o + 3] = top + height;
+        }
+        return rects;
+    }
+}
@@ -0,0 +1,113 @@
+package com.lovoo.tutorialbubbles.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void percentilesOfUniformValues () {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 ms until 1000 ms, the k-th percentile is k * 10 ms
+        for (long i = 1000; i >= 1; i--) {
+            histogram.record(i * MILLIS);
+        }
+
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(MILLIS, histogram.getMin());
+        assertEquals(1000 * MILLIS, histogram.getMax());
+        assertEquals(500.5 * MILLIS, histogram.getMean(), 1);
+
+        assertPercentile(histogram, 50, 500 * MILLIS);
+        assertPercentile(histogram, 90, 900 * MILLIS);
+        assertPercentile(histogram, 99, 990 * MILLIS);
+        assertPercentile(histogram, 99.9, 999 * MILLIS);
+        assertEquals(1000 * MILLIS, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesOfLongTail () {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 990 fast frames and 10 janky ones
+        for (int i = 0; i < 990; i++) {
+            histogram.record(8 * MILLIS);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(120 * MILLIS);
+        }
+
+        assertPercentile(histogram, 50, 8 * MILLIS);
+        assertPercentile(histogram, 99, 8 * MILLIS);
+        assertPercentile(histogram, 99.9, 120 * MILLIS);
+    }
+
+    @Test
+    public void smallValuesAreExact () {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < LatencyHistogram.SUB_BUCKET_COUNT; i++) {
+            histogram.record(i);
+            assertEquals(i, LatencyHistogram.getBucketIndex(i));
+            assertEquals(i, LatencyHistogram.getBucketUpperBound(i));
+        }
+        assertEquals(15, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void bucketBoundsContainValues () {
+        for (long value = 1; value < 1L << 42; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.getBucketIndex(value);
+            assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            if (index < LatencyHistogram.BUCKET_COUNT - 1) {
+                assertTrue("upper bound of " + value, LatencyHistogram.getBucketUpperBound(index) >= value);
+                assertTrue("lower bound of " + value,
+                        index == 0 || LatencyHistogram.getBucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndReset () {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMin());
+
+        histogram.record(5 * MILLIS);
+        histogram.record(-1);
+        assertEquals(0, histogram.getMin());
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void copyIntoTakesAllCounts () {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram snapshot = new LatencyHistogram();
+        snapshot.record(1);
+        for (long i = 1; i <= 100; i++) {
+            histogram.record(i * MILLIS);
+        }
+
+        histogram.copyInto(snapshot);
+        assertEquals(histogram.getTotalCount(), snapshot.getTotalCount());
+        assertEquals(histogram.getMin(), snapshot.getMin());
+        assertEquals(histogram.getValueAtPercentile(95), snapshot.getValueAtPercentile(95));
+    }
+
+    /**
+     * a percentile is reported as the upper bound of its bucket, so it is never below the exact value and
+     * at most one sub bucket above it.
+     */
+    private static void assertPercentile ( LatencyHistogram histogram, double percentile, long exact ) {
+        long value = histogram.getValueAtPercentile(percentile);
+        assertTrue("p" + percentile + " " + value + " below " + exact, value >= exact);
+        assertTrue("p" + percentile + " " + value + " too far above " + exact,
+                value <= exact + exact / LatencyHistogram.SUB_BUCKET_COUNT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.lovoo.tutorialbubbles.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Vector2DTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void getLength () {
+        assertEquals(60f, new Vector2D(0, 60).getLength(), EPSILON);
+        assertEquals((float) Math.sqrt(18), new Vector2D(3, -3).getLength(), EPSILON);
+        assertEquals(5f, new Vector2D(-3, 4).getLength(), EPSILON);
+        assertEquals(0f, new Vector2D().getLength(), EPSILON);
+    }
+
+    @Test
+    public void normalize () {
+        Vector2D v = new Vector2D(3, -3);
+        assertSame(v, v.normalize());
+        assertEquals(1f, v.getLength(), EPSILON);
+        assertEquals((float) (1 / Math.sqrt(2)), v.x, EPSILON);
+        assertEquals((float) (-1 / Math.sqrt(2)), v.y, EPSILON);
+
+        Vector2D nullVector = new Vector2D().normalize();
+        assertTrue(nullVector.isNullVector());
+    }
+
+    @Test
+    public void outParametersMatchAllocatingVariants () {
+        Vector2D a = new Vector2D(1.5f, -2f);
+        Vector2D b = new Vector2D(-4f, 8f);
+        Vector2D out = new Vector2D();
+
+        assertSame(out, Vector2D.add(a, b, out));
+        assertVector(Vector2D.add(a, b), out);
+
+        assertSame(out, Vector2D.subtract(a, b, out));
+        assertVector(Vector2D.subtract(a, b), out);
+
+        assertSame(out, Vector2D.getNormalized(b, out));
+        assertVector(Vector2D.getNormalized(b), out);
+
+        // the source is left unchanged unless it is also the target
+        assertVector(new Vector2D(-4f, 8f), b);
+        assertSame(b, Vector2D.getNormalized(b, b));
+        assertEquals(1f, b.getLength(), EPSILON);
+
+        assertNull(Vector2D.add(a, null, out));
+        assertNull(Vector2D.subtract(a, b, null));
+    }
+
+    @Test
+    public void getDistance () {
+        assertEquals(60f, Vector2D.getDistance(new Vector2D(10, 0), new Vector2D(10, 60)), EPSILON);
+        assertEquals((float) Math.sqrt(18), Vector2D.getDistance(new Vector2D(1, 1), new Vector2D(4, -2)), EPSILON);
+        assertEquals(-1f, Vector2D.getDistance(null, new Vector2D()), EPSILON);
+    }
+
+    @Test
+    public void getSignedAngleBetween () {
+        float angle = Vector2D.getSignedAngleBetween(new Vector2D(1, 0), new Vector2D(0, 60));
+        assertEquals((float) (Math.PI / 2), angle, EPSILON);
+
+        angle = Vector2D.getSignedAngleBetween(new Vector2D(0, 5), new Vector2D(3, 0));
+        assertEquals((float) (-Math.PI / 2), angle, EPSILON);
+    }
+
+    private static void assertVector ( Vector2D expected, Vector2D actual ) {
+        assertEquals(expected.x, actual.x, EPSILON);
+        assertEquals(expected.y, actual.y, EPSILON);
+    }
+}
@@ -0,0 +1,84 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.view.Gravity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the outline math of {@link BubbleDrawable}, without building the android path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BubbleGeometryBenchmark {
+
+    private static final float[] FUNNEL_STARTS = {0f, 0.1f, 0.25f, 0.5f, 0.75f, 0.9f, 1f};
+
+    @Param({"LEFT", "TOP", "RIGHT", "BOTTOM"})
+    public String funnelGravity;
+
+    @Param({"480x800", "1080x1920"})
+    public String screen;
+
+    private final BubbleGeometry mGeometry = new BubbleGeometry();
+    private final BubbleShapeCache.ShapeKey mShape = new BubbleShapeCache.ShapeKey();
+    private int mNextStart;
+
+    @Setup
+    public void setUp () {
+        float density = Integer.parseInt(screen.split("x")[0]) / 360f;
+        int funnelLength = (int) (20 * density);
+
+        mShape.left = 0;
+        mShape.top = 0;
+        mShape.right = (int) (220 * density);
+        mShape.bottom = (int) (90 * density);
+        mShape.edgeThickness = 2f;
+        mShape.corner = (int) (5 * density);
+        mShape.funnelWidth = (int) (25 * density);
+
+        if ("LEFT".equals(funnelGravity)) {
+            mShape.funnelGravity = Gravity.LEFT;
+            mShape.funnelVectorX = funnelLength;
+        } else if ("TOP".equals(funnelGravity)) {
+            mShape.funnelGravity = Gravity.TOP;
+            mShape.funnelVectorY = funnelLength;
+        } else if ("RIGHT".equals(funnelGravity)) {
+            mShape.funnelGravity = Gravity.RIGHT;
+            mShape.funnelVectorX = funnelLength;
+        } else {
+            mShape.funnelGravity = Gravity.BOTTOM;
+            mShape.funnelVectorY = funnelLength;
+        }
+    }
+
+    @Benchmark
+    public float outline () {
+        mNextStart = (mNextStart + 1) % FUNNEL_STARTS.length;
+        mShape.funnelStart = FUNNEL_STARTS[mNextStart];
+        mGeometry.calc(mShape);
+        return mGeometry.funnel[2] + mGeometry.funnel[3];
+    }
+
+    @Benchmark
+    public int shapeKeyHash () {
+        mNextStart = (mNextStart + 1) % FUNNEL_STARTS.length;
+        mShape.funnelStart = FUNNEL_STARTS[mNextStart];
+        return mShape.hashCode();
+    }
+}
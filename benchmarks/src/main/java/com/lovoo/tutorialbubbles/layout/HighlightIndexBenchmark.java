@@ -0,0 +1,95 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * compares touch hit testing through {@link HighlightIndex} with testing every highlight.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HighlightIndexBenchmark {
+
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int POINT_COUNT = 256;
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int highlights;
+
+    private final HighlightIndex mIndex = new HighlightIndex();
+    private int[] mRects;
+    private int[] mHits;
+    private final int[] mPoints = new int[POINT_COUNT * 2];
+    private int mNextPoint;
+
+    @Setup
+    public void setUp () {
+        Random random = new Random(42);
+        mRects = new int[highlights * 4];
+        mHits = new int[highlights];
+        for (int i = 0; i < highlights; i++) {
+            int width = 48 + random.nextInt(200);
+            int height = 48 + random.nextInt(200);
+            int left = random.nextInt(SCREEN_WIDTH - width);
+            int top = random.nextInt(SCREEN_HEIGHT - height);
+            mRects[i * 4] = left;
+            mRects[i * 4 + 1] = top;
+            mRects[i * 4 + 2] = left + width;
+            mRects[i * 4 + 3] = top + height;
+        }
+        for (int i = 0; i < POINT_COUNT; i++) {
+            mPoints[i * 2] = random.nextInt(SCREEN_WIDTH);
+            mPoints[i * 2 + 1] = random.nextInt(SCREEN_HEIGHT);
+        }
+        mIndex.build(mRects, highlights);
+    }
+
+    private int nextPoint () {
+        mNextPoint = (mNextPoint + 1) % POINT_COUNT;
+        return mNextPoint * 2;
+    }
+
+    @Benchmark
+    public int indexQuery () {
+        int point = nextPoint();
+        return mIndex.query(mPoints[point], mPoints[point + 1], mHits);
+    }
+
+    @Benchmark
+    public int linearScan () {
+        int point = nextPoint();
+        int x = mPoints[point];
+        int y = mPoints[point + 1];
+        int hits = 0;
+        for (int i = 0; i < highlights; i++) {
+            int o = i * 4;
+            if (x >= mRects[o] && x < mRects[o + 2] && y >= mRects[o + 1] && y < mRects[o + 3]) {
+                mHits[hits++] = i;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int build () {
+        mIndex.build(mRects, highlights);
+        return mIndex.size();
+    }
+}
@@ -0,0 +1,126 @@
+package com.lovoo.tutorialbubbles.layout;
+
+import android.view.Gravity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the placement of a bubble around anchors in the corners, at the edges and in the center of the screen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlacementBenchmark {
+
+    // anchors on a 3 x 3 grid over the screen
+    private static final int ANCHOR_COUNT = 9;
+
+    @Param({"480x800", "720x1280", "1080x1920", "1440x2560"})
+    public String screen;
+
+    private final PlacementSolver mSolver = new PlacementSolver();
+    private final int[] mAnchors = new int[ANCHOR_COUNT * 4];
+    private int mWidth;
+    private int mHeight;
+    private int mPadding;
+    private int mOffset;
+    private int mCornerRadius;
+    private int mFunnelWidth;
+    private int mBubbleWidth;
+    private int mBubbleHeight;
+    private int mNextAnchor;
+    private int mGravity = Gravity.NO_GRAVITY;
+
+    @Setup
+    public void setUp () {
+        String[] size = screen.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+
+        // all screens are 360dp wide
+        float density = mWidth / 360f;
+        mPadding = (int) (15 * density);
+        mOffset = (int) (5 * density);
+        mCornerRadius = (int) (5 * density);
+        mFunnelWidth = (int) (25 * density);
+        mBubbleWidth = (int) (220 * density);
+        mBubbleHeight = (int) (90 * density);
+
+        int anchorSize = (int) (48 * density);
+        int[] columns = {mPadding, (mWidth - anchorSize) / 2, mWidth - mPadding - anchorSize};
+        int[] rows = {mPadding, (mHeight - anchorSize) / 2, mHeight - mPadding - anchorSize};
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            int left = columns[i % 3];
+            int top = rows[i / 3];
+            mAnchors[i * 4] = left;
+            mAnchors[i * 4 + 1] = top;
+            mAnchors[i * 4 + 2] = left + anchorSize;
+            mAnchors[i * 4 + 3] = top + anchorSize;
+        }
+    }
+
+    private int nextAnchor () {
+        mNextAnchor = (mNextAnchor + 1) % ANCHOR_COUNT;
+        return mNextAnchor * 4;
+    }
+
+    private void calcBoxes ( int anchor ) {
+        mSolver.calcBoxes(mAnchors[anchor], mAnchors[anchor + 1], mAnchors[anchor + 2], mAnchors[anchor + 3],
+                mPadding, mPadding, mPadding, mPadding, mWidth, mHeight, mOffset);
+    }
+
+    @Benchmark
+    public int displayBoxes () {
+        calcBoxes(nextAnchor());
+        return mSolver.getBoxWidth(0);
+    }
+
+    @Benchmark
+    public int findBestBox () {
+        calcBoxes(nextAnchor());
+        return mSolver.findBestBox(mBubbleWidth, mBubbleHeight);
+    }
+
+    @Benchmark
+    public int findBestBoxWithHysteresis () {
+        calcBoxes(nextAnchor());
+        int box = mSolver.findBestBox(mBubbleWidth, mBubbleHeight, mGravity, 0.15f);
+        if (box != PlacementSolver.NO_BOX) {
+            mGravity = mSolver.getGravity(box);
+        }
+        return box;
+    }
+
+    @Benchmark
+    public void fullPlacement ( Blackhole blackhole ) {
+        calcBoxes(nextAnchor());
+        int box = mSolver.findBestBox(mBubbleWidth, mBubbleHeight);
+        if (box == PlacementSolver.NO_BOX) {
+            return;
+        }
+
+        // the bubble is shrunk to its box like the container does it
+        int width = Math.min(mBubbleWidth, mSolver.getBoxWidth(box));
+        int height = Math.min(mBubbleHeight, mSolver.getBoxHeight(box));
+        mSolver.calcInnerBoxPosition(box, width, height);
+        blackhole.consume(mSolver.getChildLeft());
+        blackhole.consume(mSolver.getChildTop());
+        blackhole.consume(mSolver.calcFunnelPosition(box, width, height, mCornerRadius, mFunnelWidth));
+    }
+}
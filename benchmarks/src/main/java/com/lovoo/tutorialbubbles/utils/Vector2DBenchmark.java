@@ -0,0 +1,98 @@
+package com.lovoo.tutorialbubbles.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the {@link Vector2D} operations used for funnel geometry.
+ * <p>
+ * the {@code *Into} and in place variants must show a {@code gc.alloc.rate.norm} of 0 B/op with the gc profiler,
+ * the allocating variants are kept for comparison. {@code transform} needs an android {@code Matrix} and is not
+ * measured here.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Vector2DBenchmark {
+
+    private Vector2D mA;
+    private Vector2D mB;
+    private Vector2D mAxisAligned;
+    private Vector2D mOut;
+
+    @Setup
+    public void setUp () {
+        mA = new Vector2D(60f, 25f);
+        mB = new Vector2D(-12f, 48f);
+        mAxisAligned = new Vector2D(0f, 60f);
+        mOut = new Vector2D();
+    }
+
+    @Benchmark
+    public Vector2D add () {
+        return Vector2D.add(mA, mB);
+    }
+
+    @Benchmark
+    public Vector2D subtract () {
+        return Vector2D.subtract(mA, mB);
+    }
+
+    @Benchmark
+    public Vector2D addInto () {
+        return Vector2D.add(mA, mB, mOut);
+    }
+
+    @Benchmark
+    public Vector2D subtractInto () {
+        return Vector2D.subtract(mA, mB, mOut);
+    }
+
+    @Benchmark
+    public float length () {
+        return mA.getLength();
+    }
+
+    @Benchmark
+    public float lengthAxisAligned () {
+        return mAxisAligned.getLength();
+    }
+
+    @Benchmark
+    public Vector2D normalized () {
+        return Vector2D.getNormalized(mA);
+    }
+
+    @Benchmark
+    public Vector2D normalizedInto () {
+        return Vector2D.getNormalized(mA, mOut);
+    }
+
+    @Benchmark
+    public Vector2D normalizeInPlace () {
+        return mOut.set(mB).normalize();
+    }
+
+    @Benchmark
+    public float distance () {
+        return Vector2D.getDistance(mA, mB);
+    }
+
+    @Benchmark
+    public float signedAngle () {
+        return Vector2D.getSignedAngleBetween(mA, mB);
+    }
+}